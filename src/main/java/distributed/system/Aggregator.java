@@ -1,15 +1,57 @@
 package distributed.system;
 
+import distributed.system.networking.LatencyHistogram;
+import distributed.system.tfidf.model.BinaryCodec;
+import distributed.system.tfidf.model.Result;
+import distributed.system.tfidf.model.Task;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class Aggregator {
+    private static final double HEDGE_QUANTILE = 0.95;
+    // The p95 of a handful of tasks says little, so hedging starts once this many have been answered
+    private static final int MIN_ANSWERS_TO_HEDGE = 20;
+
     private final WebClient webClient;
+    private final boolean hedging;
+    private final LatencyHistogram taskLatency = new LatencyHistogram();
+    private final LongAdder hedgedRequests = new LongAdder();
+    private final LongAdder failoverRequests = new LongAdder();
+    private final LongAdder backupAnswers = new LongAdder();
+    private final ScheduledExecutorService hedgeScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "aggregator-hedging");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     public Aggregator() {
-        this.webClient = new WebClient();
+        this(new WebClient());
+    }
+
+    public Aggregator(WebClient webClient) {
+        this(webClient, true);
+    }
+
+    /**
+     * @param hedging whether a task that takes longer than the p95 latency of earlier tasks is also sent to another worker
+     */
+    public Aggregator(WebClient webClient, boolean hedging) {
+        this.webClient = webClient;
+        this.hedging = hedging;
     }
 
     public List<String> sendTaskToWorkers(List<String> workerAddresses, List<String> tasks) {
@@ -21,4 +63,154 @@ public class Aggregator {
         }
         return Stream.of(futures).map(CompletableFuture::join).collect(Collectors.toList());
     }
+
+    /**
+     * Sends every task to the worker at the same position in the binary format, all at once
+     *
+     * @return one future per task, completing as soon as that worker answers
+     */
+    public List<CompletableFuture<Result>> sendTasksToWorkers(List<String> workerAddresses, List<Task> tasks) {
+        List<CompletableFuture<Result>> futures = new ArrayList<>(workerAddresses.size());
+        for (int i = 0; i < workerAddresses.size(); i++) {
+            futures.add(sendTask(workerAddresses.get(i), tasks.get(i)));
+        }
+        return futures;
+    }
+
+    public CompletableFuture<Result> sendTask(String workerAddress, Task task) {
+        return sendTask(List.of(workerAddress), task, null);
+    }
+
+    public CompletableFuture<Result> sendTask(List<String> workerAddresses, Task task, Duration timeout) {
+        return sendTask(workerAddresses, task, timeout, null);
+    }
+
+    /**
+     * Sends the task to the first worker. If it has not answered by the p95 latency of earlier tasks, the task is
+     * sent to the next worker as well and the first answer wins. A worker that fails is replaced by the next one
+     * straight away.
+     *
+     * @param workerAddresses workers that can all process the task, in order of preference
+     * @param timeout         after which no more workers are tried and pending requests fail, or null to wait indefinitely
+     * @param callback        told how long every worker took, or null
+     * @return the first result, or a future failed with the last error once every worker tried has failed
+     */
+    public CompletableFuture<Result> sendTask(List<String> workerAddresses, Task task, Duration timeout,
+                                              OnTaskCompletedCallback callback) {
+        HedgedRequest request = new HedgedRequest(workerAddresses, BinaryCodec.encodeTask(task), timeout, callback);
+        request.start();
+        return request.result;
+    }
+
+    public LatencyHistogram getTaskLatency() {
+        return taskLatency;
+    }
+
+    public long getHedgedRequestCount() {
+        return hedgedRequests.sum();
+    }
+
+    public long getFailoverRequestCount() {
+        return failoverRequests.sum();
+    }
+
+    /**
+     * @return how many tasks were answered by a worker other than the first one they were sent to
+     */
+    public long getBackupAnswerCount() {
+        return backupAnswers.sum();
+    }
+
+    private static Result decodeResult(String workerAddress, byte[] responseBytes) {
+        try {
+            return BinaryCodec.decodeResult(responseBytes);
+        } catch (UncheckedIOException e) {
+            throw new CompletionException(new IOException("Could not decode the result of " + workerAddress, e.getCause()));
+        }
+    }
+
+    private class HedgedRequest {
+        private final List<String> workerAddresses;
+        private final byte[] payload;
+        private final Duration timeout;
+        private final long deadlineNanos;
+        private final OnTaskCompletedCallback callback;
+        private final CompletableFuture<Result> result = new CompletableFuture<>();
+        private final AtomicInteger nextWorker = new AtomicInteger();
+        private final AtomicInteger pendingRequests = new AtomicInteger();
+        private volatile Throwable lastFailure;
+
+        HedgedRequest(List<String> workerAddresses, byte[] payload, Duration timeout, OnTaskCompletedCallback callback) {
+            this.workerAddresses = workerAddresses;
+            this.payload = payload;
+            this.timeout = timeout;
+            this.deadlineNanos = timeout == null ? 0 : System.nanoTime() + timeout.toNanos();
+            this.callback = callback;
+        }
+
+        void start() {
+            if (!sendToNextWorker()) {
+                result.completeExceptionally(new IOException("No worker to send the task to before the deadline"));
+                return;
+            }
+            if (!hedging || workerAddresses.size() < 2 || taskLatency.getCount() < MIN_ANSWERS_TO_HEDGE) {
+                return;
+            }
+            long hedgeDelayNanos = taskLatency.getQuantileNanos(HEDGE_QUANTILE);
+            if (timeout != null && hedgeDelayNanos >= timeout.toNanos()) {
+                return;
+            }
+            ScheduledFuture<?> hedge = hedgeScheduler.schedule(() -> {
+                if (!result.isDone() && sendToNextWorker()) {
+                    hedgedRequests.increment();
+                }
+            }, hedgeDelayNanos, TimeUnit.NANOSECONDS);
+            result.whenComplete((answer, failure) -> hedge.cancel(false));
+        }
+
+        /**
+         * @return false if there is no worker left to try or no time left to try it
+         */
+        private boolean sendToNextWorker() {
+            // Counted before picking the worker, so a concurrent failure never sees zero pending requests
+            // while this one is about to be sent
+            pendingRequests.incrementAndGet();
+            int worker = nextWorker.getAndIncrement();
+            Duration remaining = timeout == null ? null : Duration.ofNanos(deadlineNanos - System.nanoTime());
+            if (worker >= workerAddresses.size() || (remaining != null && (remaining.isNegative() || remaining.isZero()))) {
+                requestFinished();
+                return false;
+            }
+
+            String workerAddress = workerAddresses.get(worker);
+            long startNanos = System.nanoTime();
+            webClient.sendTask(workerAddress, payload, BinaryCodec.CONTENT_TYPE, remaining)
+                    .thenApply(responseBytes -> decodeResult(workerAddress, responseBytes))
+                    .whenComplete((answer, failure) -> {
+                        long elapsedNanos = System.nanoTime() - startNanos;
+                        if (callback != null) {
+                            callback.onTaskCompleted(workerAddress, elapsedNanos, failure == null);
+                        }
+                        if (failure == null) {
+                            taskLatency.recordNanos(elapsedNanos);
+                            if (result.complete(answer) && worker > 0) {
+                                backupAnswers.increment();
+                            }
+                        } else {
+                            lastFailure = failure;
+                            if (!result.isDone() && sendToNextWorker()) {
+                                failoverRequests.increment();
+                            }
+                        }
+                        requestFinished();
+                    });
+            return true;
+        }
+
+        private void requestFinished() {
+            if (pendingRequests.decrementAndGet() == 0 && lastFailure != null) {
+                result.completeExceptionally(lastFailure);
+            }
+        }
+    }
 }
@@ -1,18 +1,26 @@
 package distributed.system;
 
-import java.util.List;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
+/**
+ * Sends a query to the /search endpoint of the leader and prints the ranked documents as they arrive
+ */
 public class Application {
-    private static final String WORKER_ADDRESS_1 = "http://localhost:8081/task";
-    private static final String WORKER_ADDRESS_2 = "http://localhost:8082/task";
+    private static final String COORDINATOR_ADDRESS = "http://localhost:8080/search";
+    private static final String SEARCH_QUERY = "The best detective that catches many criminals using his detective methods";
 
-    public static void main(String[] args) {
-        Aggregator aggregator = new Aggregator();
-        String task1 = "10,200";
-        String task2 = "123456789,100000000000000,70000000003211";
-        final var results = aggregator.sendTaskToWorkers(List.of(WORKER_ADDRESS_1, WORKER_ADDRESS_2), List.of(task1, task2));
-        for (String result : results) {
-            System.out.println(result);
+    public static void main(String[] args) throws IOException {
+        String coordinatorAddress = args.length >= 1 ? args[0] : COORDINATOR_ADDRESS;
+        String query = args.length >= 2 ? String.join(" ", Arrays.copyOfRange(args, 1, args.length)) : SEARCH_QUERY;
+
+        WebClient webClient = new WebClient();
+        try (InputStream response = webClient.sendTaskForStream(coordinatorAddress,
+                query.getBytes(StandardCharsets.UTF_8), "text/plain; charset=utf-8", null).join()) {
+            response.transferTo(System.out);
         }
+        System.out.flush();
     }
 }
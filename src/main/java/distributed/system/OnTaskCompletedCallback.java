@@ -0,0 +1,10 @@
+package distributed.system;
+
+public interface OnTaskCompletedCallback {
+    /**
+     * Called for every request the {@link Aggregator} sends, including hedged requests that lose the race
+     *
+     * @param elapsedNanos from sending the request until the answer or the failure
+     */
+    void onTaskCompleted(String workerAddress, long elapsedNanos, boolean succeeded);
+}
@@ -1,18 +1,48 @@
 package distributed.system;
 
+import distributed.system.networking.ContentCodec;
+
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
 
+/**
+ * Sends requests to the other nodes over one {@link HttpClient}, so connections to the same node are reused.
+ * Responses compressed with one of the accepted encodings of the config are decompressed before they are returned.
+ */
 public class WebClient {
-    private HttpClient client;
+    private final HttpClient client;
+    private final WebClientConfig config;
+    private final String acceptEncoding;
+    private final Map<String, ContentCodec> nameToCodec = new HashMap<>();
 
     public WebClient() {
-        this.client = HttpClient.newBuilder()
-                .version(HttpClient.Version.HTTP_2)
-                .build();
+        this(WebClientConfig.defaults());
+    }
+
+    public WebClient(WebClientConfig config) {
+        this.config = config;
+        this.client = config.createHttpClient();
+        this.acceptEncoding = config.getAcceptedEncodings().stream()
+                .map(ContentCodec::getName)
+                .collect(Collectors.joining(", "));
+        for (ContentCodec codec : config.getAcceptedEncodings()) {
+            nameToCodec.put(codec.getName(), codec);
+        }
+    }
+
+    public WebClientConfig getConfig() {
+        return config;
     }
 
     public CompletableFuture<String> sendTask(String url, byte[] payload) {
@@ -23,4 +53,108 @@ public class WebClient {
         return client.sendAsync(httpRequest, HttpResponse.BodyHandlers.ofString())
                 .thenApply(HttpResponse::body);
     }
+
+    /**
+     * @return the response body, or a future failed with an {@link IOException} if the status is not 200
+     */
+    public CompletableFuture<byte[]> sendTask(String url, byte[] payload, String contentType) {
+        return sendTask(url, payload, contentType, null);
+    }
+
+    /**
+     * @param timeout how long to wait for the response headers before failing with an
+     *                {@link java.net.http.HttpTimeoutException}, or null for the request timeout of the config
+     */
+    public CompletableFuture<byte[]> sendTask(String url, byte[] payload, String contentType, Duration timeout) {
+        return send(url, payload, contentType, timeout, HttpResponse.BodyHandlers.ofByteArray())
+                .thenApply(response -> {
+                    ContentCodec codec = getContentCodec(url, response);
+                    if (codec == null) {
+                        return response.body();
+                    }
+                    try {
+                        return codec.decode(response.body());
+                    } catch (IOException e) {
+                        throw new CompletionException(e);
+                    }
+                });
+    }
+
+    /**
+     * Like {@link #sendTask(String, byte[], String, Duration)}, with the body wrapped without copying it
+     */
+    public CompletableFuture<ByteBuffer> sendTaskForByteBuffer(String url, byte[] payload, String contentType,
+                                                               Duration timeout) {
+        return sendTask(url, payload, contentType, timeout).thenApply(ByteBuffer::wrap);
+    }
+
+    /**
+     * Completes as soon as the response headers arrive, the body is read from the stream as it is received.
+     * Reading blocks the thread until the bytes arrive, so it should not be done on a small shared executor.
+     * The caller must close the stream, which also gives the connection back for reuse.
+     */
+    public CompletableFuture<InputStream> sendTaskForStream(String url, byte[] payload, String contentType,
+                                                           Duration timeout) {
+        return send(url, payload, contentType, timeout, HttpResponse.BodyHandlers.ofInputStream())
+                .thenApply(response -> {
+                    InputStream body = response.body();
+                    try {
+                        ContentCodec codec = getContentCodec(url, response);
+                        return codec == null ? body : codec.decode(body);
+                    } catch (IOException | RuntimeException e) {
+                        try {
+                            body.close();
+                        } catch (IOException closeException) {
+                            e.addSuppressed(closeException);
+                        }
+                        throw e instanceof RuntimeException runtimeException ? runtimeException : new CompletionException(e);
+                    }
+                });
+    }
+
+    /**
+     * @return a future failed with an {@link IOException} if the status is not 200
+     */
+    private <T> CompletableFuture<HttpResponse<T>> send(String url, byte[] payload, String contentType, Duration timeout,
+                                                        HttpResponse.BodyHandler<T> bodyHandler) {
+        final var requestBuilder = HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .header("Content-Type", contentType)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(payload));
+        Duration requestTimeout = timeout != null ? timeout : config.getRequestTimeout();
+        if (requestTimeout != null) {
+            requestBuilder.timeout(requestTimeout);
+        }
+        if (!acceptEncoding.isEmpty()) {
+            requestBuilder.header("Accept-Encoding", acceptEncoding);
+        }
+        // The body of an error is discarded rather than kept, the status is all the caller is told
+        HttpResponse.BodyHandler<T> okBodyHandler = responseInfo -> responseInfo.statusCode() == 200
+                ? bodyHandler.apply(responseInfo)
+                : HttpResponse.BodySubscribers.replacing(null);
+        return client.sendAsync(requestBuilder.build(), okBodyHandler)
+                .thenApply(response -> {
+                    if (response.statusCode() != 200) {
+                        throw new CompletionException(new IOException(
+                                String.format("%s answered with status %d", url, response.statusCode())));
+                    }
+                    return response;
+                });
+    }
+
+    /**
+     * @return the codec the body was compressed with, or null if it was not
+     */
+    private ContentCodec getContentCodec(String url, HttpResponse<?> response) {
+        String contentEncoding = response.headers().firstValue("Content-Encoding").orElse("identity");
+        if (contentEncoding.equalsIgnoreCase("identity")) {
+            return null;
+        }
+        ContentCodec codec = nameToCodec.get(contentEncoding.toLowerCase());
+        if (codec == null) {
+            throw new CompletionException(new IOException(
+                    String.format("%s answered with unsupported content encoding %s", url, contentEncoding)));
+        }
+        return codec;
+    }
 }
@@ -0,0 +1,98 @@
+package distributed.system;
+
+import distributed.system.networking.ContentCodec;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * How a {@link WebClient} connects to the servers.
+ * <ul>
+ *     <li>executor: runs the response handling and the dependent actions of the returned futures; null keeps the
+ *     cached thread pool of the {@link HttpClient}</li>
+ *     <li>connect timeout and request timeout: the request timeout applies to requests sent without one, and only
+ *     covers the wait for the response headers</li>
+ *     <li>version: HTTP/1.1 by default, as every server of the cluster is a {@link distributed.system.networking.WebServer}
+ *     that does not speak HTTP/2; asking for HTTP/2 adds an upgrade attempt to every new connection</li>
+ *     <li>accepted encodings: the content codings the servers may compress responses with, in order of preference;
+ *     none by default</li>
+ * </ul>
+ * The most idle connections kept open for reuse is not part of the config, as it is one setting for the whole JVM:
+ * the {@code jdk.httpclient.connectionPoolSize} system property, read when the first client is built. Application
+ * sets it from {@code webclient.connections}.
+ */
+public class WebClientConfig {
+    public static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(5);
+
+    private final Executor executor;
+    private final Duration connectTimeout;
+    private final Duration requestTimeout;
+    private final HttpClient.Version version;
+    private final List<ContentCodec> acceptedEncodings;
+
+    private WebClientConfig(Executor executor, Duration connectTimeout, Duration requestTimeout,
+                            HttpClient.Version version, List<ContentCodec> acceptedEncodings) {
+        this.executor = executor;
+        this.connectTimeout = connectTimeout;
+        this.requestTimeout = requestTimeout;
+        this.version = version;
+        this.acceptedEncodings = List.copyOf(acceptedEncodings);
+    }
+
+    public static WebClientConfig defaults() {
+        return new WebClientConfig(null, DEFAULT_CONNECT_TIMEOUT, null, HttpClient.Version.HTTP_1_1, List.of());
+    }
+
+    public WebClientConfig withExecutor(Executor executor) {
+        return new WebClientConfig(executor, connectTimeout, requestTimeout, version, acceptedEncodings);
+    }
+
+    public WebClientConfig withConnectTimeout(Duration connectTimeout) {
+        return new WebClientConfig(executor, connectTimeout, requestTimeout, version, acceptedEncodings);
+    }
+
+    public WebClientConfig withRequestTimeout(Duration requestTimeout) {
+        return new WebClientConfig(executor, connectTimeout, requestTimeout, version, acceptedEncodings);
+    }
+
+    public WebClientConfig withVersion(HttpClient.Version version) {
+        return new WebClientConfig(executor, connectTimeout, requestTimeout, version, acceptedEncodings);
+    }
+
+    public WebClientConfig withAcceptedEncodings(List<ContentCodec> acceptedEncodings) {
+        return new WebClientConfig(executor, connectTimeout, requestTimeout, version, acceptedEncodings);
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    public Duration getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public Duration getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    public HttpClient.Version getVersion() {
+        return version;
+    }
+
+    public List<ContentCodec> getAcceptedEncodings() {
+        return acceptedEncodings;
+    }
+
+    HttpClient createHttpClient() {
+        HttpClient.Builder builder = HttpClient.newBuilder().version(version);
+        if (connectTimeout != null) {
+            builder.connectTimeout(connectTimeout);
+        }
+        if (executor != null) {
+            builder.executor(executor);
+        }
+        return builder.build();
+    }
+}
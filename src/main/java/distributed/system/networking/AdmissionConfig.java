@@ -0,0 +1,63 @@
+package distributed.system.networking;
+
+import java.time.Duration;
+
+/**
+ * When a {@link WebServer} turns task requests away instead of working on them, so an overloaded server answers
+ * quickly and the client tries another server, rather than every request getting slower until the client gives up.
+ * A request is turned away with 503 Service Unavailable and a Retry-After header if
+ * <ul>
+ *     <li>as many task requests as {@code maxInFlight} are already being worked on, or</li>
+ *     <li>it waited longer than {@code maxQueueWait} for a thread of the executor. Its client has probably given
+ *     up on it by then, and the queue drains quickly since turning a request away costs next to nothing.</li>
+ * </ul>
+ * The status and metrics endpoints are always answered.
+ */
+public class AdmissionConfig {
+    public static final Duration DEFAULT_MAX_QUEUE_WAIT = Duration.ofMillis(500);
+
+    private final int maxInFlight;
+    private final Duration maxQueueWait;
+
+    private AdmissionConfig(int maxInFlight, Duration maxQueueWait) {
+        this.maxInFlight = maxInFlight;
+        this.maxQueueWait = maxQueueWait;
+    }
+
+    public static AdmissionConfig disabled() {
+        return new AdmissionConfig(0, Duration.ZERO);
+    }
+
+    public static AdmissionConfig defaults() {
+        return of(0, DEFAULT_MAX_QUEUE_WAIT);
+    }
+
+    /**
+     * @param maxInFlight  the most task requests worked on at the same time, 0 for no limit
+     * @param maxQueueWait the longest a task request may wait for a thread, zero for no limit
+     */
+    public static AdmissionConfig of(int maxInFlight, Duration maxQueueWait) {
+        return new AdmissionConfig(maxInFlight, maxQueueWait);
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public Duration getMaxQueueWait() {
+        return maxQueueWait;
+    }
+
+    public boolean isEnabled() {
+        return maxInFlight > 0 || !maxQueueWait.isZero();
+    }
+
+    @Override
+    public String toString() {
+        if (!isEnabled()) {
+            return "no admission control";
+        }
+        return String.format("admission control at %s in flight and %s queue wait",
+                maxInFlight > 0 ? String.valueOf(maxInFlight) : "any", maxQueueWait.isZero() ? "any" : maxQueueWait.toMillis() + " ms");
+    }
+}
@@ -0,0 +1,102 @@
+package distributed.system.networking;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Applies an {@link AdmissionConfig} to the task requests of a {@link WebServer}, and tells whether the server is
+ * saturated, which it is for a while after it turned a request away
+ */
+class AdmissionController implements MetricsSource {
+    private static final long SATURATION_NANOS = TimeUnit.SECONDS.toNanos(2);
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+    // When the request being handled on this thread was handed to the executor
+    private static final ThreadLocal<Long> QUEUED_NANOS = new ThreadLocal<>();
+
+    private final AdmissionConfig config;
+    private final long maxQueueWaitNanos;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder inFlightRejections = new LongAdder();
+    private final LongAdder queueWaitRejections = new LongAdder();
+    private final LongAdder queueFullRejections = new LongAdder();
+    private volatile long lastRejectionNanos;
+    private volatile boolean rejectedAny;
+
+    AdmissionController(AdmissionConfig config) {
+        this.config = config;
+        this.maxQueueWaitNanos = config.getMaxQueueWait().toNanos();
+    }
+
+    /**
+     * @return an executor that runs the requests on {@code executor}, noting when each was queued
+     */
+    Executor timeQueue(Executor executor) {
+        return request -> {
+            long queuedNanos = System.nanoTime();
+            executor.execute(() -> {
+                QUEUED_NANOS.set(queuedNanos);
+                try {
+                    request.run();
+                } finally {
+                    QUEUED_NANOS.remove();
+                }
+            });
+        };
+    }
+
+    /**
+     * Called by the thread handling a task request before working on it. {@link #finish()} must follow if the
+     * request is admitted.
+     *
+     * @return 0 to admit the request, otherwise the seconds to send in the Retry-After header of the 503
+     */
+    int admit() {
+        Long queuedNanos = QUEUED_NANOS.get();
+        long queueWaitNanos = queuedNanos == null ? 0 : System.nanoTime() - queuedNanos;
+        if (maxQueueWaitNanos > 0 && queueWaitNanos > maxQueueWaitNanos) {
+            queueWaitRejections.increment();
+            // By the time the client tries again, the requests queued now have been answered or turned away
+            return reject(queueWaitNanos);
+        }
+        if (inFlight.incrementAndGet() > config.getMaxInFlight() && config.getMaxInFlight() > 0) {
+            inFlight.decrementAndGet();
+            inFlightRejections.increment();
+            return reject(0);
+        }
+        return 0;
+    }
+
+    void finish() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * @return the seconds to send in the Retry-After header of a request rejected by the executor's full queue
+     */
+    int rejectQueueFull() {
+        queueFullRejections.increment();
+        return reject(0);
+    }
+
+    boolean isSaturated() {
+        return rejectedAny && System.nanoTime() - lastRejectionNanos < SATURATION_NANOS;
+    }
+
+    @Override
+    public void writeMetrics(MetricsWriter writer) {
+        writer.family("webserver_admission_rejected_total", "counter", "Task requests turned away, by reason");
+        writer.sample("webserver_admission_rejected_total", "reason", "in_flight", inFlightRejections.sum());
+        writer.sample("webserver_admission_rejected_total", "reason", "queue_wait", queueWaitRejections.sum());
+        writer.sample("webserver_admission_rejected_total", "reason", "queue_full", queueFullRejections.sum());
+        writer.gauge("webserver_saturated", "1 if a task request was turned away in the last 2 seconds",
+                isSaturated() ? 1 : 0);
+    }
+
+    private int reject(long queueWaitNanos) {
+        lastRejectionNanos = System.nanoTime();
+        rejectedAny = true;
+        return (int) Math.max(1, (queueWaitNanos + NANOS_PER_SECOND - 1) / NANOS_PER_SECOND);
+    }
+}
@@ -0,0 +1,57 @@
+package distributed.system.networking;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Sends the response headers for a chunked 200 response on the first write, flush or close, and counts the bytes written
+ */
+class ChunkedResponseStream extends OutputStream {
+    private final HttpExchange exchange;
+    private OutputStream responseBody;
+    private long bytesWritten;
+
+    ChunkedResponseStream(HttpExchange exchange) {
+        this.exchange = exchange;
+    }
+
+    boolean isCommitted() {
+        return responseBody != null;
+    }
+
+    long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        commit().write(b);
+        bytesWritten++;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        commit().write(bytes, offset, length);
+        bytesWritten += length;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        commit().flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        commit().close();
+    }
+
+    private OutputStream commit() throws IOException {
+        if (responseBody == null) {
+            exchange.sendResponseHeaders(200, 0);
+            responseBody = exchange.getResponseBody();
+        }
+        return responseBody;
+    }
+}
@@ -0,0 +1,93 @@
+package distributed.system.networking;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Holds back the start of a streamed response until it is big enough to be worth compressing. From then on the
+ * Content-Encoding header is set and the rest is compressed; a response that stays smaller is sent as is on close.
+ * Flushing does not send the bytes held back.
+ */
+class CompressingResponseStream extends OutputStream {
+    private final HttpExchange exchange;
+    private final ChunkedResponseStream responseBody;
+    private final ContentCodec codec;
+    private final int minBytes;
+    private byte[] pending;
+    private int pendingCount;
+    private OutputStream compressingBody;
+    private long bytesWritten;
+    private boolean closed;
+
+    CompressingResponseStream(HttpExchange exchange, ChunkedResponseStream responseBody, ContentCodec codec, int minBytes) {
+        this.exchange = exchange;
+        this.responseBody = responseBody;
+        this.codec = codec;
+        this.minBytes = minBytes;
+    }
+
+    boolean isCompressing() {
+        return compressingBody != null;
+    }
+
+    /**
+     * @return the bytes written before compression
+     */
+    long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        bytesWritten += length;
+        if (compressingBody != null) {
+            compressingBody.write(bytes, offset, length);
+            return;
+        }
+        if (pendingCount + length < minBytes) {
+            if (pending == null) {
+                pending = new byte[minBytes];
+            }
+            System.arraycopy(bytes, offset, pending, pendingCount, length);
+            pendingCount += length;
+            return;
+        }
+
+        // Set before the codec writes anything, which commits the response headers
+        exchange.getResponseHeaders().set(WebServer.CONTENT_ENCODING_HEADER, codec.getName());
+        compressingBody = codec.encode(responseBody);
+        if (pendingCount > 0) {
+            compressingBody.write(pending, 0, pendingCount);
+        }
+        pending = null;
+        compressingBody.write(bytes, offset, length);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (compressingBody != null) {
+            compressingBody.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (compressingBody != null) {
+            compressingBody.close();
+            return;
+        }
+        responseBody.write(pending == null ? new byte[0] : pending, 0, pendingCount);
+        responseBody.close();
+    }
+}
@@ -0,0 +1,103 @@
+package distributed.system.networking;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Which content codings a {@link WebServer} compresses responses with, in order of preference, and the smallest
+ * response worth compressing. A response is only compressed if the request asks for one of the codings in its
+ * Accept-Encoding header. A response returned whole is only sent compressed if that made it smaller; a streamed one
+ * is compressed as soon as it passes the threshold.
+ */
+public class CompressionConfig {
+    public static final int DEFAULT_MIN_BYTES = 1024;
+
+    private final List<ContentCodec> codecs;
+    private final int minBytes;
+
+    private CompressionConfig(List<ContentCodec> codecs, int minBytes) {
+        this.codecs = List.copyOf(codecs);
+        this.minBytes = minBytes;
+    }
+
+    public static CompressionConfig disabled() {
+        return new CompressionConfig(List.of(), 0);
+    }
+
+    public static CompressionConfig defaults() {
+        return of(List.of(new Lz4Codec(), new GzipCodec()), DEFAULT_MIN_BYTES);
+    }
+
+    public static CompressionConfig of(List<ContentCodec> codecs, int minBytes) {
+        return new CompressionConfig(codecs, minBytes);
+    }
+
+    /**
+     * @param codecNames comma separated, for example "x-lz4,gzip"; empty to disable compression
+     */
+    public static CompressionConfig of(String codecNames, int minBytes) {
+        return of(ContentCodec.forNames(codecNames), minBytes);
+    }
+
+    public List<ContentCodec> getCodecs() {
+        return codecs;
+    }
+
+    public int getMinBytes() {
+        return minBytes;
+    }
+
+    public boolean isEnabled() {
+        return !codecs.isEmpty();
+    }
+
+    /**
+     * @param acceptEncoding the Accept-Encoding header of a request, for example "gzip;q=0.5, x-lz4", or null
+     * @return the codec with the highest quality value the client gave, the earlier one in this config on a tie,
+     * or null if the client accepts none of them
+     */
+    ContentCodec negotiate(String acceptEncoding) {
+        if (acceptEncoding == null || codecs.isEmpty()) {
+            return null;
+        }
+        Map<String, Double> codingToQuality = new HashMap<>();
+        for (String element : acceptEncoding.split(",")) {
+            String[] parameters = element.split(";");
+            String coding = parameters[0].trim().toLowerCase();
+            double quality = 1;
+            for (int i = 1; i < parameters.length; i++) {
+                String parameter = parameters[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            codingToQuality.put(coding, quality);
+        }
+
+        ContentCodec best = null;
+        double bestQuality = 0;
+        for (ContentCodec codec : codecs) {
+            double quality = codingToQuality.getOrDefault(codec.getName(), codingToQuality.getOrDefault("*", 0.0));
+            if (quality > bestQuality) {
+                best = codec;
+                bestQuality = quality;
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public String toString() {
+        if (codecs.isEmpty()) {
+            return "no compression";
+        }
+        return String.format("%s compression from %d bytes",
+                codecs.stream().map(ContentCodec::getName).collect(Collectors.joining(",")), minBytes);
+    }
+}
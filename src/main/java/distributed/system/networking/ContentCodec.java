@@ -0,0 +1,73 @@
+package distributed.system.networking;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A content coding of HTTP bodies, named as in the Accept-Encoding and Content-Encoding headers
+ */
+public interface ContentCodec {
+    String getName();
+
+    /**
+     * @return a stream that encodes what is written to it into {@code outputStream}, and closes it when closed
+     */
+    OutputStream encode(OutputStream outputStream) throws IOException;
+
+    /**
+     * @return a stream of the decoded bytes of {@code inputStream}, which does not read from it before it is read
+     */
+    InputStream decode(InputStream inputStream) throws IOException;
+
+    default byte[] encode(byte[] data) throws IOException {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(data.length / 2 + 64);
+        try (OutputStream outputStream = encode(byteArrayOutputStream)) {
+            outputStream.write(data);
+        }
+        return byteArrayOutputStream.toByteArray();
+    }
+
+    default byte[] decode(byte[] data) throws IOException {
+        try (InputStream inputStream = decode(new ByteArrayInputStream(data))) {
+            return inputStream.readAllBytes();
+        }
+    }
+
+    /**
+     * @return the codec with the given name, or null if there is none
+     */
+    static ContentCodec forName(String name) {
+        switch (name.trim().toLowerCase()) {
+            case GzipCodec.NAME:
+                return new GzipCodec();
+            case Lz4Codec.NAME:
+                return new Lz4Codec();
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @param names comma separated, for example "x-lz4,gzip"
+     * @throws IllegalArgumentException if a name is not a known codec
+     */
+    static List<ContentCodec> forNames(String names) {
+        List<ContentCodec> codecs = new ArrayList<>();
+        for (String name : names.split(",")) {
+            if (name.isBlank()) {
+                continue;
+            }
+            ContentCodec codec = forName(name);
+            if (codec == null) {
+                throw new IllegalArgumentException("Unknown content coding " + name.trim());
+            }
+            codecs.add(codec);
+        }
+        return codecs;
+    }
+}
@@ -0,0 +1,117 @@
+package distributed.system.networking;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Request counters and latencies of one endpoint; recording is lock-free and does not allocate
+ */
+class EndpointMetrics {
+    private static final String[] STATUS_CLASSES = {"1xx", "2xx", "3xx", "4xx", "5xx"};
+
+    private final String endpoint;
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder inFlight = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder requestBytes = new LongAdder();
+    private final LongAdder responseBytes = new LongAdder();
+    private final LongAdder compressedResponses = new LongAdder();
+    private final LongAdder compressionSavedBytes = new LongAdder();
+    private final LongAdder[] responsesByStatusClass = new LongAdder[STATUS_CLASSES.length];
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    EndpointMetrics(String endpoint) {
+        this.endpoint = endpoint;
+        for (int i = 0; i < responsesByStatusClass.length; i++) {
+            responsesByStatusClass[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @return the start time to pass to {@link #finish}
+     */
+    long start() {
+        requests.increment();
+        inFlight.increment();
+        return System.nanoTime();
+    }
+
+    /**
+     * @param status the response status, or -1 if the exchange was closed without a response
+     */
+    void finish(long startNanos, int status) {
+        latency.recordNanos(System.nanoTime() - startNanos);
+        inFlight.decrement();
+        int statusClass = status / 100 - 1;
+        if (statusClass >= 0 && statusClass < responsesByStatusClass.length) {
+            responsesByStatusClass[statusClass].increment();
+        }
+    }
+
+    void addRejected() {
+        rejected.increment();
+    }
+
+    void addRequestBytes(long bytes) {
+        requestBytes.add(bytes);
+    }
+
+    void addResponseBytes(long bytes) {
+        responseBytes.add(bytes);
+    }
+
+    /**
+     * @param savedBytes how many bytes smaller compression made the response
+     */
+    void addCompressedResponse(long savedBytes) {
+        compressedResponses.increment();
+        compressionSavedBytes.add(savedBytes);
+    }
+
+    String getEndpoint() {
+        return endpoint;
+    }
+
+    long getRequests() {
+        return requests.sum();
+    }
+
+    long getInFlight() {
+        return inFlight.sum();
+    }
+
+    long getRejected() {
+        return rejected.sum();
+    }
+
+    long getRequestBytes() {
+        return requestBytes.sum();
+    }
+
+    long getResponseBytes() {
+        return responseBytes.sum();
+    }
+
+    long getCompressedResponses() {
+        return compressedResponses.sum();
+    }
+
+    long getCompressionSavedBytes() {
+        return compressionSavedBytes.sum();
+    }
+
+    int getStatusClassCount() {
+        return STATUS_CLASSES.length;
+    }
+
+    String getStatusClass(int index) {
+        return STATUS_CLASSES[index];
+    }
+
+    long getResponses(int statusClassIndex) {
+        return responsesByStatusClass[statusClassIndex].sum();
+    }
+
+    LatencyHistogram getLatency() {
+        return latency;
+    }
+}
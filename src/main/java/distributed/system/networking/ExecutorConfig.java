@@ -0,0 +1,156 @@
+package distributed.system.networking;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * How the {@link WebServer} runs its request handlers.
+ * <ul>
+ *     <li>{@link Mode#FIXED}: a fixed number of threads with an unbounded queue</li>
+ *     <li>{@link Mode#BOUNDED}: a fixed number of threads with a bounded queue. Requests that do not fit are answered
+ *     with 503 Service Unavailable on a separate rejection thread instead of waiting</li>
+ *     <li>{@link Mode#VIRTUAL}: a new virtual thread per request. Virtual threads need a Java 21 runtime,
+ *     on older runtimes this falls back to {@link Mode#FIXED}, since a thread per request would be unbounded</li>
+ * </ul>
+ */
+public class ExecutorConfig {
+    public enum Mode {
+        FIXED, BOUNDED, VIRTUAL
+    }
+
+    public static final int DEFAULT_THREADS = 8;
+
+    private final Mode mode;
+    private final int threads;
+    private final int queueCapacity;
+
+    private ExecutorConfig(Mode mode, int threads, int queueCapacity) {
+        this.mode = mode;
+        this.threads = threads;
+        this.queueCapacity = queueCapacity;
+    }
+
+    public static ExecutorConfig fixed(int threads) {
+        return new ExecutorConfig(Mode.FIXED, threads, 0);
+    }
+
+    public static ExecutorConfig bounded(int threads, int queueCapacity) {
+        return new ExecutorConfig(Mode.BOUNDED, threads, queueCapacity);
+    }
+
+    public static ExecutorConfig virtualThreads() {
+        return virtualThreads(DEFAULT_THREADS);
+    }
+
+    /**
+     * @param fallbackThreads the threads of the fixed pool used instead on runtimes without virtual threads
+     */
+    public static ExecutorConfig virtualThreads(int fallbackThreads) {
+        return new ExecutorConfig(Mode.VIRTUAL, fallbackThreads, 0);
+    }
+
+    /**
+     * @param mode one of fixed, bounded or virtual, case insensitive
+     */
+    public static ExecutorConfig of(String mode, int threads, int queueCapacity) {
+        switch (Mode.valueOf(mode.toUpperCase())) {
+            case BOUNDED:
+                return bounded(threads, queueCapacity);
+            case VIRTUAL:
+                return virtualThreads(threads);
+            default:
+                return fixed(threads);
+        }
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    ExecutorService createExecutor(String name) {
+        switch (mode) {
+            case BOUNDED:
+                ExecutorService rejectionExecutor = Executors.newSingleThreadExecutor(
+                        runnable -> new RejectionThread(runnable, name + "-rejection"));
+                RejectedExecutionHandler answerWithServiceUnavailable = (exchange, executor) -> rejectionExecutor.execute(exchange);
+                return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                        new ArrayBlockingQueue<>(queueCapacity), namedThreads(name), answerWithServiceUnavailable) {
+                    @Override
+                    protected void terminated() {
+                        rejectionExecutor.shutdown();
+                    }
+                };
+            case VIRTUAL:
+                ExecutorService virtualThreadExecutor = newVirtualThreadPerTaskExecutor();
+                if (virtualThreadExecutor != null) {
+                    return virtualThreadExecutor;
+                }
+                System.out.println(String.format("Virtual threads need Java 21, using a fixed pool of %d threads instead",
+                        threads));
+                return newFixedThreadPool(name);
+            default:
+                return newFixedThreadPool(name);
+        }
+    }
+
+    /**
+     * @return true if the current request was rejected by a full queue and must be answered with 503
+     */
+    static boolean isRejectedRequest() {
+        return Thread.currentThread() instanceof RejectionThread;
+    }
+
+    private ExecutorService newFixedThreadPool(String name) {
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                namedThreads(name));
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static ThreadFactory namedThreads(String name) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return runnable -> new Thread(runnable, name + "-" + threadNumber.incrementAndGet());
+    }
+
+    @Override
+    public String toString() {
+        switch (mode) {
+            case BOUNDED:
+                return String.format("bounded(%d threads, %d queued)", threads, queueCapacity);
+            case VIRTUAL:
+                return "virtual";
+            default:
+                return String.format("fixed(%d threads)", threads);
+        }
+    }
+
+    private static class RejectionThread extends Thread {
+        RejectionThread(Runnable runnable, String name) {
+            super(runnable, name);
+            setDaemon(true);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package distributed.system.networking;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The standard gzip content coding. Compresses better than {@link Lz4Codec} for several times the CPU.
+ */
+public class GzipCodec implements ContentCodec {
+    public static final String NAME = "gzip";
+    public static final int DEFAULT_LEVEL = Deflater.BEST_SPEED;
+    private static final int BUFFER_SIZE = 8192;
+
+    private final int level;
+
+    public GzipCodec() {
+        this(DEFAULT_LEVEL);
+    }
+
+    /**
+     * @param level the deflate level, from 1 (fastest) to 9 (smallest)
+     */
+    public GzipCodec(int level) {
+        this.level = level;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    @Override
+    public OutputStream encode(OutputStream outputStream) throws IOException {
+        // Sync flush, so flushing the stream sends what was written so far instead of keeping it in the deflater
+        return new GZIPOutputStream(outputStream, BUFFER_SIZE, true) {
+            {
+                def.setLevel(level);
+            }
+        };
+    }
+
+    @Override
+    public InputStream decode(InputStream inputStream) {
+        return new LazyGzipInputStream(inputStream);
+    }
+
+    /**
+     * Creating a GZIPInputStream reads the gzip header, which would block until the first bytes of the body arrive
+     */
+    private static class LazyGzipInputStream extends InputStream {
+        private final InputStream inputStream;
+        private InputStream gzipInputStream;
+
+        LazyGzipInputStream(InputStream inputStream) {
+            this.inputStream = inputStream;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return gzip().read();
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            return gzip().read(bytes, offset, length);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return gzipInputStream == null ? 0 : gzipInputStream.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (gzipInputStream == null) {
+                inputStream.close();
+            } else {
+                gzipInputStream.close();
+            }
+        }
+
+        private InputStream gzip() throws IOException {
+            if (gzipInputStream == null) {
+                gzipInputStream = new GZIPInputStream(inputStream, BUFFER_SIZE);
+            }
+            return gzipInputStream;
+        }
+    }
+}
@@ -0,0 +1,398 @@
+package distributed.system.networking;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Content coding "x-lz4": the body is cut into blocks of up to 64 KB, each compressed in the LZ4 block format.
+ * It only finds repeated runs of bytes, without entropy coding, so it compresses less than gzip but many times faster.
+ * <pre>
+ * body  : block*, int 0
+ * block : int rawLength, int storedLength, storedLength bytes
+ *         (the raw bytes if storedLength == rawLength, otherwise the LZ4 compressed block)
+ * </pre>
+ * The closing 0 lets the decoder tell a truncated body from a complete one.
+ */
+public class Lz4Codec implements ContentCodec {
+    public static final String NAME = "x-lz4";
+    static final int BLOCK_SIZE = 64 * 1024;
+
+    private static final int MIN_MATCH = 4;
+    // The LZ4 format needs the last 5 bytes of a block to be literals, and the last match to start 12 bytes before the end
+    private static final int LAST_LITERALS = 5;
+    private static final int MATCH_FIND_LIMIT = 12;
+    private static final int MAX_OFFSET = 65535;
+    private static final int HASH_LOG = 12;
+    // After 2^6 bytes without a match the search moves on faster, so incompressible data costs little
+    private static final int SKIP_STRENGTH = 6;
+    private static final VarHandle INT_VIEW = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle LONG_VIEW = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public OutputStream encode(OutputStream outputStream) {
+        return new Lz4OutputStream(outputStream);
+    }
+
+    @Override
+    public InputStream decode(InputStream inputStream) {
+        return new Lz4InputStream(inputStream);
+    }
+
+    static int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * @param hashTable 2^{@value #HASH_LOG} entries, reused between calls
+     * @return the number of bytes written to {@code destination}, at most {@link #maxCompressedLength}
+     */
+    static int compress(byte[] source, int length, byte[] destination, int[] hashTable) {
+        Arrays.fill(hashTable, -1);
+        int anchor = 0;
+        int output = 0;
+        int matchStartLimit = length - MATCH_FIND_LIMIT;
+        int matchEndLimit = length - LAST_LITERALS;
+
+        int position = 1;
+        if (length > MATCH_FIND_LIMIT) {
+            hashTable[hash(readInt(source, 0))] = 0;
+        }
+        while (position < matchStartLimit) {
+            int sequence = readInt(source, position);
+            int hash = hash(sequence);
+            int reference = hashTable[hash];
+            hashTable[hash] = position;
+            if (reference < 0 || position - reference > MAX_OFFSET || readInt(source, reference) != sequence) {
+                position += 1 + ((position - anchor) >>> SKIP_STRENGTH);
+                continue;
+            }
+
+            while (position > anchor && reference > 0 && source[position - 1] == source[reference - 1]) {
+                position--;
+                reference--;
+            }
+            int matchEnd = matchEnd(source, position + MIN_MATCH, reference + MIN_MATCH, matchEndLimit);
+
+            output = writeSequence(source, anchor, position - anchor, position - reference,
+                    matchEnd - position - MIN_MATCH, destination, output);
+            position = matchEnd;
+            anchor = position;
+            if (position < matchStartLimit) {
+                hashTable[hash(readInt(source, position - 2))] = position - 2;
+            }
+        }
+
+        int literalLength = length - anchor;
+        int tokenPosition = output++;
+        if (literalLength >= 15) {
+            destination[tokenPosition] = (byte) (15 << 4);
+            output = writeLength(literalLength - 15, destination, output);
+        } else {
+            destination[tokenPosition] = (byte) (literalLength << 4);
+        }
+        System.arraycopy(source, anchor, destination, output, literalLength);
+        return output + literalLength;
+    }
+
+    /**
+     * @throws IOException if the block is malformed or does not decompress to exactly {@code rawLength} bytes
+     */
+    static void decompress(byte[] source, int sourceLength, byte[] destination, int rawLength) throws IOException {
+        int input = 0;
+        int output = 0;
+        while (true) {
+            if (input >= sourceLength) {
+                throw new IOException("Truncated LZ4 block");
+            }
+            int token = source[input++] & 0xFF;
+
+            int literalLength = token >>> 4;
+            if (literalLength == 15) {
+                int b;
+                do {
+                    if (input >= sourceLength) {
+                        throw new IOException("Truncated LZ4 block");
+                    }
+                    b = source[input++] & 0xFF;
+                    literalLength += b;
+                } while (b == 255);
+            }
+            if (literalLength > sourceLength - input || literalLength > rawLength - output) {
+                throw new IOException("Malformed LZ4 block: literals out of bounds");
+            }
+            System.arraycopy(source, input, destination, output, literalLength);
+            input += literalLength;
+            output += literalLength;
+            if (input == sourceLength) {
+                break;
+            }
+
+            if (sourceLength - input < 2) {
+                throw new IOException("Truncated LZ4 block");
+            }
+            int offset = (source[input] & 0xFF) | (source[input + 1] & 0xFF) << 8;
+            input += 2;
+            if (offset == 0 || offset > output) {
+                throw new IOException("Malformed LZ4 block: offset out of bounds");
+            }
+
+            int matchLength = token & 0x0F;
+            if (matchLength == 15) {
+                int b;
+                do {
+                    if (input >= sourceLength) {
+                        throw new IOException("Truncated LZ4 block");
+                    }
+                    b = source[input++] & 0xFF;
+                    matchLength += b;
+                } while (b == 255);
+            }
+            matchLength += MIN_MATCH;
+            if (matchLength > rawLength - output) {
+                throw new IOException("Malformed LZ4 block: match out of bounds");
+            }
+
+            int reference = output - offset;
+            if (offset >= matchLength) {
+                System.arraycopy(destination, reference, destination, output, matchLength);
+            } else {
+                // The match overlaps the bytes it produces, a run of a short pattern
+                for (int i = 0; i < matchLength; i++) {
+                    destination[output + i] = destination[reference + i];
+                }
+            }
+            output += matchLength;
+        }
+        if (output != rawLength) {
+            throw new IOException(String.format("LZ4 block decompressed to %d bytes instead of %d", output, rawLength));
+        }
+    }
+
+    /**
+     * @return where the bytes at {@code position} stop matching the ones at {@code reference}, at most {@code limit}
+     */
+    private static int matchEnd(byte[] source, int position, int reference, int limit) {
+        // Compares 8 bytes at a time, the first differing bit tells how many of them matched
+        while (position <= limit - Long.BYTES) {
+            long difference = (long) LONG_VIEW.get(source, position) ^ (long) LONG_VIEW.get(source, reference);
+            if (difference != 0) {
+                return position + (Long.numberOfTrailingZeros(difference) >>> 3);
+            }
+            position += Long.BYTES;
+            reference += Long.BYTES;
+        }
+        while (position < limit && source[position] == source[reference]) {
+            position++;
+            reference++;
+        }
+        return position;
+    }
+
+    private static int writeSequence(byte[] source, int literalStart, int literalLength, int offset, int matchLength,
+                                     byte[] destination, int output) {
+        int tokenPosition = output++;
+        int token;
+        if (literalLength >= 15) {
+            token = 15 << 4;
+            output = writeLength(literalLength - 15, destination, output);
+        } else {
+            token = literalLength << 4;
+        }
+        System.arraycopy(source, literalStart, destination, output, literalLength);
+        output += literalLength;
+
+        destination[output++] = (byte) offset;
+        destination[output++] = (byte) (offset >>> 8);
+        if (matchLength >= 15) {
+            token |= 15;
+            output = writeLength(matchLength - 15, destination, output);
+        } else {
+            token |= matchLength;
+        }
+        destination[tokenPosition] = (byte) token;
+        return output;
+    }
+
+    private static int writeLength(int length, byte[] destination, int output) {
+        while (length >= 255) {
+            destination[output++] = (byte) 255;
+            length -= 255;
+        }
+        destination[output++] = (byte) length;
+        return output;
+    }
+
+    private static int readInt(byte[] bytes, int position) {
+        return (int) INT_VIEW.get(bytes, position);
+    }
+
+    private static int hash(int sequence) {
+        return (sequence * -1640531535) >>> (32 - HASH_LOG);
+    }
+
+    private static class Lz4OutputStream extends OutputStream {
+        private final DataOutputStream outputStream;
+        private final byte[] block = new byte[BLOCK_SIZE];
+        private final byte[] compressed = new byte[maxCompressedLength(BLOCK_SIZE)];
+        private final int[] hashTable = new int[1 << HASH_LOG];
+        private int count;
+        private boolean closed;
+
+        Lz4OutputStream(OutputStream outputStream) {
+            this.outputStream = new DataOutputStream(outputStream);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == block.length) {
+                writeBlock();
+            }
+            block[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            while (length > 0) {
+                if (count == block.length) {
+                    writeBlock();
+                }
+                int copied = Math.min(length, block.length - count);
+                System.arraycopy(bytes, offset, block, count, copied);
+                count += copied;
+                offset += copied;
+                length -= copied;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            writeBlock();
+            outputStream.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                writeBlock();
+                outputStream.writeInt(0);
+            } finally {
+                outputStream.close();
+            }
+        }
+
+        private void writeBlock() throws IOException {
+            if (count == 0) {
+                return;
+            }
+            int compressedLength = compress(block, count, compressed, hashTable);
+            outputStream.writeInt(count);
+            if (compressedLength < count) {
+                outputStream.writeInt(compressedLength);
+                outputStream.write(compressed, 0, compressedLength);
+            } else {
+                outputStream.writeInt(count);
+                outputStream.write(block, 0, count);
+            }
+            count = 0;
+        }
+    }
+
+    private static class Lz4InputStream extends InputStream {
+        private final DataInputStream inputStream;
+        private final byte[] block = new byte[BLOCK_SIZE];
+        private byte[] compressed;
+        private int position;
+        private int limit;
+        private boolean finished;
+
+        Lz4InputStream(InputStream inputStream) {
+            this.inputStream = new DataInputStream(inputStream);
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) {
+                return -1;
+            }
+            return block[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int copied = Math.min(length, limit - position);
+            System.arraycopy(block, position, bytes, offset, copied);
+            position += copied;
+            return copied;
+        }
+
+        @Override
+        public int available() {
+            return limit - position;
+        }
+
+        @Override
+        public void close() throws IOException {
+            inputStream.close();
+        }
+
+        /**
+         * @return false at the end of the body
+         */
+        private boolean fill() throws IOException {
+            while (position == limit) {
+                if (finished) {
+                    return false;
+                }
+                readBlock();
+            }
+            return true;
+        }
+
+        private void readBlock() throws IOException {
+            // Throws EOFException if the body ends before the closing 0
+            int rawLength = inputStream.readInt();
+            if (rawLength == 0) {
+                finished = true;
+                return;
+            }
+            int storedLength = inputStream.readInt();
+            if (rawLength < 0 || rawLength > BLOCK_SIZE || storedLength <= 0 || storedLength > rawLength) {
+                throw new IOException(String.format("Malformed LZ4 block header %d/%d", rawLength, storedLength));
+            }
+
+            if (storedLength == rawLength) {
+                inputStream.readFully(block, 0, rawLength);
+            } else {
+                if (compressed == null) {
+                    compressed = new byte[BLOCK_SIZE];
+                }
+                inputStream.readFully(compressed, 0, storedLength);
+                decompress(compressed, storedLength, block, rawLength);
+            }
+            position = 0;
+            limit = rawLength;
+        }
+    }
+}
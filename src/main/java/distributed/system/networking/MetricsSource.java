@@ -0,0 +1,12 @@
+package distributed.system.networking;
+
+/**
+ * Adds its own metrics to the /metrics endpoint of a {@link WebServer}. A request callback that implements
+ * this interface is added automatically; others are added with {@link WebServer#addMetricsSource}.
+ */
+public interface MetricsSource {
+    /**
+     * Called on the scraping request's thread; metric names must not clash with those of other sources
+     */
+    void writeMetrics(MetricsWriter writer);
+}
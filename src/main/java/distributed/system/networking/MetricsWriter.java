@@ -0,0 +1,77 @@
+package distributed.system.networking;
+
+/**
+ * Writes metrics in the Prometheus text exposition format. Every metric family is started with {@link #family}
+ * and followed by its samples.
+ */
+public class MetricsWriter {
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final StringBuilder output = new StringBuilder();
+
+    /**
+     * @param type one of counter, gauge, summary, histogram or untyped
+     */
+    public MetricsWriter family(String name, String type, String help) {
+        output.append("# HELP ").append(name).append(' ').append(help.replace("\\", "\\\\").replace("\n", "\\n")).append('\n');
+        output.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        return this;
+    }
+
+    public MetricsWriter sample(String name, double value) {
+        output.append(name).append(' ');
+        appendValue(value);
+        return this;
+    }
+
+    public MetricsWriter sample(String name, String labelName, String labelValue, double value) {
+        output.append(name).append('{');
+        appendLabel(labelName, labelValue);
+        output.append("} ");
+        appendValue(value);
+        return this;
+    }
+
+    public MetricsWriter sample(String name, String labelName, String labelValue,
+                                String secondLabelName, String secondLabelValue, double value) {
+        output.append(name).append('{');
+        appendLabel(labelName, labelValue);
+        output.append(',');
+        appendLabel(secondLabelName, secondLabelValue);
+        output.append("} ");
+        appendValue(value);
+        return this;
+    }
+
+    public MetricsWriter counter(String name, String help, double value) {
+        return family(name, "counter", help).sample(name, value);
+    }
+
+    public MetricsWriter gauge(String name, String help, double value) {
+        return family(name, "gauge", help).sample(name, value);
+    }
+
+    @Override
+    public String toString() {
+        return output.toString();
+    }
+
+    private void appendLabel(String name, String value) {
+        output.append(name).append("=\"")
+                .append(value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+                .append('"');
+    }
+
+    private void appendValue(double value) {
+        if (Double.isNaN(value)) {
+            output.append("NaN");
+        } else if (Double.isInfinite(value)) {
+            output.append(value > 0 ? "+Inf" : "-Inf");
+        } else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            output.append((long) value);
+        } else {
+            output.append(value);
+        }
+        output.append('\n');
+    }
+}
@@ -27,5 +27,12 @@ package distributed.system.networking;
 public interface OnRequestCallback {
     byte[] handleRequest(byte[] requestPayload);
 
+    /**
+     * @param contentType the Content-Type of the request, or null if it has none. The response is sent with the same type.
+     */
+    default byte[] handleRequest(byte[] requestPayload, String contentType) {
+        return handleRequest(requestPayload);
+    }
+
     String getEndpoint();
 }
@@ -0,0 +1,129 @@
+package distributed.system.networking;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Collects the metrics of the endpoints, the executor and the JVM of one {@link WebServer}
+ */
+class ServerMetrics {
+    private static final double NANOS_PER_SECOND = 1e9;
+    private static final double[] QUANTILES = {0.5, 0.9, 0.95, 0.99, 0.999};
+
+    private final List<EndpointMetrics> endpoints;
+    private final List<MetricsSource> sources = new CopyOnWriteArrayList<>();
+    private volatile ExecutorService executor;
+
+    ServerMetrics(List<EndpointMetrics> endpoints) {
+        this.endpoints = endpoints;
+    }
+
+    void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    void addSource(MetricsSource source) {
+        sources.add(source);
+    }
+
+    String render() {
+        MetricsWriter writer = new MetricsWriter();
+        writeEndpointMetrics(writer);
+        writeExecutorMetrics(writer);
+        writeGarbageCollectorMetrics(writer);
+        for (MetricsSource source : sources) {
+            source.writeMetrics(writer);
+        }
+        return writer.toString();
+    }
+
+    private void writeEndpointMetrics(MetricsWriter writer) {
+        writer.family("webserver_requests_total", "counter", "Requests received");
+        for (EndpointMetrics endpoint : endpoints) {
+            writer.sample("webserver_requests_total", "endpoint", endpoint.getEndpoint(), endpoint.getRequests());
+        }
+
+        writer.family("webserver_responses_total", "counter", "Responses sent by status class");
+        for (EndpointMetrics endpoint : endpoints) {
+            for (int i = 0; i < endpoint.getStatusClassCount(); i++) {
+                writer.sample("webserver_responses_total", "endpoint", endpoint.getEndpoint(),
+                        "status", endpoint.getStatusClass(i), endpoint.getResponses(i));
+            }
+        }
+
+        writer.family("webserver_requests_rejected_total", "counter", "Requests answered with 503 because the server was overloaded");
+        for (EndpointMetrics endpoint : endpoints) {
+            writer.sample("webserver_requests_rejected_total", "endpoint", endpoint.getEndpoint(), endpoint.getRejected());
+        }
+
+        writer.family("webserver_requests_in_flight", "gauge", "Requests being handled");
+        for (EndpointMetrics endpoint : endpoints) {
+            writer.sample("webserver_requests_in_flight", "endpoint", endpoint.getEndpoint(), endpoint.getInFlight());
+        }
+
+        writer.family("webserver_request_bytes_total", "counter", "Bytes read from request bodies");
+        for (EndpointMetrics endpoint : endpoints) {
+            writer.sample("webserver_request_bytes_total", "endpoint", endpoint.getEndpoint(), endpoint.getRequestBytes());
+        }
+
+        writer.family("webserver_response_bytes_total", "counter", "Bytes written to response bodies, after compression");
+        for (EndpointMetrics endpoint : endpoints) {
+            writer.sample("webserver_response_bytes_total", "endpoint", endpoint.getEndpoint(), endpoint.getResponseBytes());
+        }
+
+        writer.family("webserver_compressed_responses_total", "counter", "Responses sent with a Content-Encoding");
+        for (EndpointMetrics endpoint : endpoints) {
+            writer.sample("webserver_compressed_responses_total", "endpoint", endpoint.getEndpoint(),
+                    endpoint.getCompressedResponses());
+        }
+
+        writer.family("webserver_compression_saved_bytes_total", "counter", "Bytes of response bodies saved by compression");
+        for (EndpointMetrics endpoint : endpoints) {
+            writer.sample("webserver_compression_saved_bytes_total", "endpoint", endpoint.getEndpoint(),
+                    endpoint.getCompressionSavedBytes());
+        }
+
+        writer.family("webserver_request_duration_seconds", "summary", "Time to handle a request since the server started");
+        for (EndpointMetrics endpoint : endpoints) {
+            LatencyHistogram latency = endpoint.getLatency();
+            for (double quantile : QUANTILES) {
+                writer.sample("webserver_request_duration_seconds", "endpoint", endpoint.getEndpoint(),
+                        "quantile", Double.toString(quantile), latency.getQuantileNanos(quantile) / NANOS_PER_SECOND);
+            }
+            writer.sample("webserver_request_duration_seconds_sum", "endpoint", endpoint.getEndpoint(),
+                    latency.getTotalNanos() / NANOS_PER_SECOND);
+            writer.sample("webserver_request_duration_seconds_count", "endpoint", endpoint.getEndpoint(), latency.getCount());
+        }
+
+        writer.family("webserver_request_duration_seconds_max", "gauge", "Longest time to handle a request");
+        for (EndpointMetrics endpoint : endpoints) {
+            writer.sample("webserver_request_duration_seconds_max", "endpoint", endpoint.getEndpoint(),
+                    endpoint.getLatency().getMaxNanos() / NANOS_PER_SECOND);
+        }
+    }
+
+    private void writeExecutorMetrics(MetricsWriter writer) {
+        // Virtual threads have no pool or queue to report; in-flight requests cover them
+        if (!(executor instanceof ThreadPoolExecutor)) {
+            return;
+        }
+        ThreadPoolExecutor threadPool = (ThreadPoolExecutor) executor;
+        writer.gauge("webserver_executor_active_threads", "Threads handling a request", threadPool.getActiveCount());
+        writer.gauge("webserver_executor_pool_threads", "Threads in the pool", threadPool.getPoolSize());
+        writer.gauge("webserver_executor_queued_requests", "Requests waiting for a thread", threadPool.getQueue().size());
+        writer.counter("webserver_executor_completed_total", "Requests the pool has finished", threadPool.getCompletedTaskCount());
+    }
+
+    private void writeGarbageCollectorMetrics(MetricsWriter writer) {
+        List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+        writer.family("jvm_gc_collection_seconds", "summary", "Time spent in garbage collections by collector");
+        for (GarbageCollectorMXBean collector : collectors) {
+            writer.sample("jvm_gc_collection_seconds_count", "gc", collector.getName(), collector.getCollectionCount());
+            writer.sample("jvm_gc_collection_seconds_sum", "gc", collector.getName(), collector.getCollectionTime() / 1000.0);
+        }
+    }
+}
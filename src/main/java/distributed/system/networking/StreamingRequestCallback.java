@@ -0,0 +1,19 @@
+package distributed.system.networking;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A callback that reads the request and writes the response as streams, so neither has to be held in memory
+ * as a whole. The {@link WebServer} sends the response with chunked transfer encoding.
+ */
+public interface StreamingRequestCallback extends OnRequestCallback {
+    /**
+     * The response headers are sent on the first write to {@code responseBody}, so throwing before anything is
+     * written still answers with an error status.
+     *
+     * @param contentType the Content-Type of the request, or null if it has none. The response is sent with the same type.
+     */
+    void handleRequest(InputStream requestBody, OutputStream responseBody, String contentType) throws IOException;
+}
@@ -26,23 +26,85 @@ package distributed.system.networking;
 
 import com.sun.net.httpserver.HttpContext;
 import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
 
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
-import java.util.concurrent.Executors;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
 
+/**
+ * Run the JVM with {@code -Dsun.net.httpserver.nodelay=true}, as {@link distributed.system.zookeeper.Application}
+ * does. The server writes the response headers and body separately, and with Nagle's algorithm a small body waits
+ * for the ACK of the headers, which the client delays by up to 40 ms, on every request.
+ */
 public class WebServer {
     private static final String STATUS_ENDPOINT = "/status";
+    private static final String METRICS_ENDPOINT = "/metrics";
+    private static final String CONTENT_TYPE_HEADER = "Content-Type";
+    static final String CONTENT_ENCODING_HEADER = "Content-Encoding";
+    private static final String ACCEPT_ENCODING_HEADER = "Accept-Encoding";
+
+    private static final int INTERNAL_SERVER_ERROR = 500;
+    private static final int SERVICE_UNAVAILABLE = 503;
 
     private final int port;
     private HttpServer server;
+    private ExecutorService executor;
     private final OnRequestCallback onRequestCallback;
+    private final ExecutorConfig executorConfig;
+    private final CompressionConfig compressionConfig;
+    private final AdmissionConfig admissionConfig;
+    private final EndpointMetrics statusMetrics = new EndpointMetrics(STATUS_ENDPOINT);
+    private final EndpointMetrics taskMetrics;
+    private final ServerMetrics serverMetrics;
+    private final AdmissionController admissionController;
 
     public WebServer(int port, OnRequestCallback onRequestCallback) {
+        this(port, onRequestCallback, ExecutorConfig.fixed(ExecutorConfig.DEFAULT_THREADS));
+    }
+
+    public WebServer(int port, OnRequestCallback onRequestCallback, ExecutorConfig executorConfig) {
+        this(port, onRequestCallback, executorConfig, CompressionConfig.defaults());
+    }
+
+    public WebServer(int port, OnRequestCallback onRequestCallback, ExecutorConfig executorConfig,
+                     CompressionConfig compressionConfig) {
+        this(port, onRequestCallback, executorConfig, compressionConfig, AdmissionConfig.disabled());
+    }
+
+    public WebServer(int port, OnRequestCallback onRequestCallback, ExecutorConfig executorConfig,
+                     CompressionConfig compressionConfig, AdmissionConfig admissionConfig) {
         this.port = port;
         this.onRequestCallback = onRequestCallback;
+        this.executorConfig = executorConfig;
+        this.compressionConfig = compressionConfig;
+        this.admissionConfig = admissionConfig;
+        this.taskMetrics = new EndpointMetrics(onRequestCallback.getEndpoint());
+        this.serverMetrics = new ServerMetrics(List.of(statusMetrics, taskMetrics));
+        this.admissionController = new AdmissionController(admissionConfig);
+        serverMetrics.addSource(admissionController);
+        if (onRequestCallback instanceof MetricsSource) {
+            serverMetrics.addSource((MetricsSource) onRequestCallback);
+        }
+    }
+
+    /**
+     * Adds metrics to the /metrics endpoint, for example of caches the request callback uses
+     */
+    public void addMetricsSource(MetricsSource metricsSource) {
+        serverMetrics.addSource(metricsSource);
+    }
+
+    /**
+     * @return true if the server turned a task request away in the last 2 seconds, because of its admission config
+     * or a full queue
+     */
+    public boolean isSaturated() {
+        return admissionController.isSaturated();
     }
 
     public void startServer() {
@@ -55,40 +117,198 @@ public class WebServer {
 
         HttpContext statusContext = server.createContext(STATUS_ENDPOINT);
         HttpContext taskContext = server.createContext(onRequestCallback.getEndpoint());
+        HttpContext metricsContext = server.createContext(METRICS_ENDPOINT);
 
-        statusContext.setHandler(this::handleStatusCheckRequest);
-        taskContext.setHandler(this::handleTaskRequest);
+        statusContext.setHandler(exchange -> handleWithMetrics(statusMetrics, this::handleStatusCheckRequest, exchange));
+        taskContext.setHandler(exchange -> handleWithMetrics(taskMetrics, this::handleTaskRequest, exchange));
+        metricsContext.setHandler(this::handleMetricsRequest);
 
-        server.setExecutor(Executors.newFixedThreadPool(8));
+        executor = executorConfig.createExecutor("web-server-" + port);
+        serverMetrics.setExecutor(executor);
+        server.setExecutor(admissionController.timeQueue(executor));
         server.start();
+        System.out.println(String.format("Listening on port %d with a %s executor, %s, %s", port, executorConfig,
+                compressionConfig, admissionConfig));
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdown();
+        }
+    }
+
+    private void handleWithMetrics(EndpointMetrics metrics, HttpHandler handler, HttpExchange exchange) throws IOException {
+        long startNanos = metrics.start();
+        if (ExecutorConfig.isRejectedRequest()) {
+            metrics.addRejected();
+        }
+        try {
+            handler.handle(exchange);
+        } finally {
+            metrics.finish(startNanos, exchange.getResponseCode());
+        }
     }
 
     private void handleTaskRequest(HttpExchange exchange) throws IOException {
+        if (ExecutorConfig.isRejectedRequest()) {
+            sendServiceUnavailable(exchange, admissionController.rejectQueueFull());
+            return;
+        }
+        int retryAfterSeconds = admissionController.admit();
+        if (retryAfterSeconds > 0) {
+            taskMetrics.addRejected();
+            sendServiceUnavailable(exchange, retryAfterSeconds);
+            return;
+        }
+        try {
+            handleAdmittedTaskRequest(exchange);
+        } finally {
+            admissionController.finish();
+        }
+    }
+
+    private void handleAdmittedTaskRequest(HttpExchange exchange) throws IOException {
         if (!exchange.getRequestMethod().equalsIgnoreCase("post")) {
             exchange.close();
             return;
         }
 
-        byte[] responseBytes = onRequestCallback.handleRequest(exchange.getRequestBody().readAllBytes());
+        String contentType = exchange.getRequestHeaders().getFirst(CONTENT_TYPE_HEADER);
+        if (onRequestCallback instanceof StreamingRequestCallback streamingCallback) {
+            sendStreamingResponse(streamingCallback, contentType, exchange);
+            return;
+        }
 
-        sendResponse(responseBytes, exchange);
+        byte[] requestBytes = exchange.getRequestBody().readAllBytes();
+        taskMetrics.addRequestBytes(requestBytes.length);
+        byte[] responseBytes = onRequestCallback.handleRequest(requestBytes, contentType);
+        if (contentType != null) {
+            exchange.getResponseHeaders().set(CONTENT_TYPE_HEADER, contentType);
+        }
+
+        sendResponse(responseBytes, exchange, taskMetrics);
     }
 
     private void handleStatusCheckRequest(HttpExchange exchange) throws IOException {
+        if (ExecutorConfig.isRejectedRequest()) {
+            sendServiceUnavailable(exchange);
+            return;
+        }
         if (!exchange.getRequestMethod().equalsIgnoreCase("get")) {
             exchange.close();
             return;
         }
 
         String responseMessage = "Server is alive\n";
-        sendResponse(responseMessage.getBytes(), exchange);
+        sendResponse(responseMessage.getBytes(), exchange, statusMetrics);
+    }
+
+    private void handleMetricsRequest(HttpExchange exchange) throws IOException {
+        if (ExecutorConfig.isRejectedRequest()) {
+            sendServiceUnavailable(exchange);
+            return;
+        }
+        if (!exchange.getRequestMethod().equalsIgnoreCase("get")) {
+            exchange.close();
+            return;
+        }
+
+        byte[] responseBytes = serverMetrics.render().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set(CONTENT_TYPE_HEADER, MetricsWriter.CONTENT_TYPE);
+        writeResponse(responseBytes, exchange);
     }
 
-    private void sendResponse(byte[] responseBytes, HttpExchange exchange) throws IOException {
-        exchange.sendResponseHeaders(200, responseBytes.length);
+    private void sendResponse(byte[] responseBytes, HttpExchange exchange, EndpointMetrics metrics) throws IOException {
+        int bytesSent = writeResponse(responseBytes, exchange);
+        metrics.addResponseBytes(bytesSent);
+        if (bytesSent < responseBytes.length) {
+            metrics.addCompressedResponse(responseBytes.length - bytesSent);
+        }
+    }
+
+    /**
+     * Compresses the response if the client accepts one of the codings of the compression config, it is big enough
+     * and it gets smaller
+     *
+     * @return the number of bytes sent
+     */
+    private int writeResponse(byte[] responseBytes, HttpExchange exchange) throws IOException {
+        byte[] body = responseBytes;
+        ContentCodec codec = negotiateEncoding(exchange);
+        if (codec != null && responseBytes.length >= compressionConfig.getMinBytes()) {
+            byte[] encodedBytes = codec.encode(responseBytes);
+            if (encodedBytes.length < responseBytes.length) {
+                exchange.getResponseHeaders().set(CONTENT_ENCODING_HEADER, codec.getName());
+                body = encodedBytes;
+            }
+        }
+
+        exchange.sendResponseHeaders(200, body.length);
         OutputStream outputStream = exchange.getResponseBody();
-        outputStream.write(responseBytes);
+        outputStream.write(body);
         outputStream.flush();
         outputStream.close();
+        return body.length;
+    }
+
+    /**
+     * @return the codec to compress the response with, or null to send it as is
+     */
+    private ContentCodec negotiateEncoding(HttpExchange exchange) {
+        if (!compressionConfig.isEnabled()) {
+            return null;
+        }
+        // The body depends on the Accept-Encoding of the request, which caches have to know
+        exchange.getResponseHeaders().add("Vary", ACCEPT_ENCODING_HEADER);
+        return compressionConfig.negotiate(exchange.getRequestHeaders().getFirst(ACCEPT_ENCODING_HEADER));
+    }
+
+    private void sendStreamingResponse(StreamingRequestCallback callback, String contentType, HttpExchange exchange)
+            throws IOException {
+        if (contentType != null) {
+            exchange.getResponseHeaders().set(CONTENT_TYPE_HEADER, contentType);
+        }
+
+        CountingInputStream requestBody = new CountingInputStream(exchange.getRequestBody());
+        ChunkedResponseStream responseBody = new ChunkedResponseStream(exchange);
+        ContentCodec codec = negotiateEncoding(exchange);
+        CompressingResponseStream compressingBody = codec == null ? null
+                : new CompressingResponseStream(exchange, responseBody, codec, compressionConfig.getMinBytes());
+        OutputStream callbackBody = compressingBody == null ? responseBody : compressingBody;
+        try (requestBody) {
+            callback.handleRequest(requestBody, callbackBody, contentType);
+            callbackBody.close();
+        } catch (IOException | RuntimeException e) {
+            if (responseBody.isCommitted()) {
+                // Closing the exchange would end the chunked body normally, so let the server drop the connection
+                // to show the client that the response is incomplete
+                throw e;
+            }
+            e.printStackTrace();
+            exchange.getResponseHeaders().remove(CONTENT_TYPE_HEADER);
+            exchange.getResponseHeaders().remove(CONTENT_ENCODING_HEADER);
+            exchange.sendResponseHeaders(INTERNAL_SERVER_ERROR, -1);
+            exchange.close();
+        } finally {
+            taskMetrics.addRequestBytes(requestBody.getBytesRead());
+            taskMetrics.addResponseBytes(responseBody.getBytesWritten());
+            if (compressingBody != null && compressingBody.isCompressing()) {
+                // A streamed response is compressed once it passes the threshold, even if that does not make it smaller
+                taskMetrics.addCompressedResponse(Math.max(0, compressingBody.getBytesWritten() - responseBody.getBytesWritten()));
+            }
+        }
+    }
+
+    private void sendServiceUnavailable(HttpExchange exchange) throws IOException {
+        sendServiceUnavailable(exchange, 1);
+    }
+
+    private void sendServiceUnavailable(HttpExchange exchange, int retryAfterSeconds) throws IOException {
+        // The request body is never read, so the connection cannot be reused
+        exchange.getResponseHeaders().set("Connection", "close");
+        exchange.getResponseHeaders().set("Retry-After", String.valueOf(retryAfterSeconds));
+        exchange.sendResponseHeaders(SERVICE_UNAVAILABLE, -1);
+        exchange.close();
     }
 }
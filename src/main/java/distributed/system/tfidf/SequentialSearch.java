@@ -1,13 +1,13 @@
 package distributed.system.tfidf;
 
 import distributed.system.tfidf.model.DocumentData;
+import distributed.system.tfidf.model.DocumentScore;
+import distributed.system.tfidf.search.DocumentScanner;
 import distributed.system.tfidf.search.TFIDF;
+import distributed.system.tfidf.search.TermCounter;
 
-import javax.swing.text.Document;
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -19,8 +19,9 @@ public class SequentialSearch {
     private static final String SEARCH_QUERY_1 = "The best detective that catches many criminals using his detective methods";
     private static final String SEARCH_QUERY_2 = "The girl that falls through a rabbit hole into a fantasy wonderland";
     private static final String SEARCH_QUERY_3 = "A war between Russia and France in the cold winter";
+    private static final int TOP_RESULTS = 10;
 
-    public static void main(String[] args) throws FileNotFoundException {
+    public static void main(String[] args) throws IOException {
         File documentsDirectory = new File(BOOKS_DIRECTORY);
         final var documents = Arrays.asList(documentsDirectory.list())
                 .stream()
@@ -31,25 +32,22 @@ public class SequentialSearch {
     }
 
     private static void findMostRelevantDocuments(final List<String> documents,
-                                                  final List<String> terms) throws FileNotFoundException {
+                                                  final List<String> terms) throws IOException {
         Map<String, DocumentData> documentDataMap = new HashMap<>();
+        DocumentScanner documentScanner = new DocumentScanner();
         for(String document : documents){
-            BufferedReader bufferedReader = new BufferedReader(new FileReader(document));
-            var lines = bufferedReader.lines().collect(Collectors.toList());
-            var words = TFIDF.getWordsFromLines(lines);
-            var documentData = TFIDF.createDocumentData(words, terms);
+            var termCounter = new TermCounter(terms);
+            documentScanner.scan(document, termCounter);
+            var documentData = TFIDF.createDocumentData(termCounter, terms);
             documentDataMap.put(document, documentData);
         }
-        var documentsByScore = TFIDF.getDocumentsSortedByScore(terms, documentDataMap);
-        printResults(documentsByScore);
+        var topDocuments = TFIDF.getTopDocuments(terms, documentDataMap, TOP_RESULTS);
+        printResults(topDocuments);
     }
 
-    private static void printResults(final Map<Double, List<String>> documentsByScore) {
-        for(Map.Entry<Double, List<String>> documentScorePair : documentsByScore.entrySet()) {
-            double score = documentScorePair.getKey();
-            for(String document : documentScorePair.getValue()){
-                System.out.println(String.format("Book : %s - score : %f", document.split("/")[3],score));
-            }
+    private static void printResults(final List<DocumentScore> topDocuments) {
+        for(DocumentScore documentScore : topDocuments) {
+            System.out.println(String.format("Book : %s - score : %f", documentScore.getDocument().split("/")[3], documentScore.getScore()));
         }
     }
 }
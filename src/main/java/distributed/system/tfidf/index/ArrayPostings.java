@@ -0,0 +1,44 @@
+package distributed.system.tfidf.index;
+
+import java.util.Arrays;
+
+public class ArrayPostings implements Postings {
+    private int[] documentIds;
+    private int[] counts;
+    private int size;
+
+    public ArrayPostings() {
+        this(0);
+    }
+
+    public ArrayPostings(int capacity) {
+        this.documentIds = new int[capacity];
+        this.counts = new int[capacity];
+    }
+
+    void add(int documentId, int count) {
+        if (size == documentIds.length) {
+            int capacity = Math.max(4, size * 2);
+            documentIds = Arrays.copyOf(documentIds, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+        }
+        documentIds[size] = documentId;
+        counts[size] = count;
+        size++;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int getDocumentId(int index) {
+        return documentIds[index];
+    }
+
+    @Override
+    public int getCount(int index) {
+        return counts[index];
+    }
+}
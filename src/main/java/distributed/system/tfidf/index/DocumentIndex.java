@@ -0,0 +1,17 @@
+package distributed.system.tfidf.index;
+
+public interface DocumentIndex {
+    int NOT_INDEXED = -1;
+
+    /**
+     * @return the id of the document, or {@link #NOT_INDEXED} if the document is not part of the index
+     */
+    int getDocumentId(String document);
+
+    IndexedDocument getDocument(int documentId);
+
+    /**
+     * @param term a lower case term
+     */
+    Postings getPostings(String term);
+}
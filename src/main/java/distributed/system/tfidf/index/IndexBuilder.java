@@ -0,0 +1,101 @@
+package distributed.system.tfidf.index;
+
+import distributed.system.tfidf.search.DocumentScanner;
+import distributed.system.tfidf.search.TermCounter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Tokenizes the corpus once and keeps the persistent index up to date.
+ * Documents whose modification time matches the index are carried over without being read again.
+ */
+public class IndexBuilder {
+    private final Path indexDirectory;
+
+    public IndexBuilder(Path indexDirectory) {
+        this.indexDirectory = indexDirectory;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.out.println("Usage: IndexBuilder <documents directory> <index directory>");
+            return;
+        }
+        File documentsDirectory = new File(args[0]);
+        List<String> documents = Arrays.stream(documentsDirectory.list())
+                .sorted()
+                .map(docName -> args[0] + "/" + docName)
+                .collect(Collectors.toList());
+
+        new IndexBuilder(Paths.get(args[1])).update(documents);
+    }
+
+    /**
+     * Brings the index in line with the given documents, retokenizing only new and modified ones.
+     * Documents that are no longer listed are dropped from the index.
+     */
+    public InvertedIndex update(List<String> documents) throws IOException {
+        InvertedIndex previousIndex = IndexFiles.exists(indexDirectory) ? IndexFiles.load(indexDirectory) : new InvertedIndex();
+
+        boolean[] unchanged = new boolean[previousIndex.getDocuments().size()];
+        List<String> changedDocuments = new ArrayList<>();
+        for (String document : documents) {
+            int previousId = previousIndex.getDocumentId(document);
+            long lastModified = new File(document).lastModified();
+            if (previousId != DocumentIndex.NOT_INDEXED
+                    && previousIndex.getDocument(previousId).getLastModified() == lastModified) {
+                unchanged[previousId] = true;
+            } else {
+                changedDocuments.add(document);
+            }
+        }
+
+        // Unchanged documents keep their relative order, so carried over postings stay sorted by document id
+        InvertedIndex index = new InvertedIndex();
+        Map<Integer, Integer> previousToCurrentId = new HashMap<>();
+        for (int previousId = 0; previousId < unchanged.length; previousId++) {
+            if (unchanged[previousId]) {
+                previousToCurrentId.put(previousId, index.addDocument(previousIndex.getDocument(previousId)));
+            }
+        }
+
+        if (changedDocuments.isEmpty() && previousToCurrentId.size() == previousIndex.getDocuments().size()) {
+            System.out.println(String.format("Index is up to date with %d documents", documents.size()));
+            return previousIndex;
+        }
+
+        for (Map.Entry<String, ? extends Postings> termPostings : previousIndex.getTermToPostings().entrySet()) {
+            Postings postings = termPostings.getValue();
+            for (int i = 0; i < postings.size(); i++) {
+                Integer currentId = previousToCurrentId.get(postings.getDocumentId(i));
+                if (currentId != null) {
+                    index.addPosting(termPostings.getKey(), currentId, postings.getCount(i));
+                }
+            }
+        }
+
+        DocumentScanner documentScanner = new DocumentScanner();
+        for (String document : changedDocuments) {
+            // Read the modification time before the contents, so a concurrent edit makes the entry stale rather than wrong
+            long lastModified = new File(document).lastModified();
+            TermCounter termCounter = new TermCounter();
+            documentScanner.scan(document, termCounter);
+            index.addDocument(new IndexedDocument(document, lastModified, termCounter.getTotalTokens()), termCounter);
+        }
+
+        IndexFiles.write(index, indexDirectory);
+        System.out.println(String.format("Indexed %d new or modified documents, %d documents in index",
+                changedDocuments.size(), index.getDocuments().size()));
+        return index;
+    }
+
+}
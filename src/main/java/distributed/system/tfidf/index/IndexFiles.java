@@ -0,0 +1,233 @@
+package distributed.system.tfidf.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * On-disk layout of the inverted index. Every build is written to a new {@code generation-N} directory, and the
+ * {@code CURRENT} file names the generation readers use. Replacing that one file switches all three index files
+ * at once, so a reader never mixes the documents, dictionary and postings of two builds.
+ * <pre>
+ * CURRENT                     : the name of the current generation directory, followed by a newline
+ * generation-N/documents.idx  : int count, count x (int pathLength, path bytes, long lastModified, long length)
+ * generation-N/dictionary.idx : int count, count x (int termOffset, int termLength, long postingsOffset,
+ *                               int documentFrequency), followed by the UTF-8 bytes of all terms. Entries are sorted
+ *                               by the unsigned bytes of the term.
+ * generation-N/postings.idx   : per term, documentFrequency x (int documentId, int count) ordered by document id
+ * </pre>
+ */
+public class IndexFiles {
+    public static final String DOCUMENTS_FILE = "documents.idx";
+    public static final String DICTIONARY_FILE = "dictionary.idx";
+    public static final String POSTINGS_FILE = "postings.idx";
+    public static final String CURRENT_FILE = "CURRENT";
+    private static final String GENERATION_PREFIX = "generation-";
+
+    static final int DICTIONARY_HEADER_SIZE = Integer.BYTES;
+    static final int DICTIONARY_ENTRY_SIZE = 3 * Integer.BYTES + Long.BYTES;
+    static final int POSTING_SIZE = 2 * Integer.BYTES;
+
+    public static boolean exists(Path indexDirectory) throws IOException {
+        Path generationDirectory = currentGeneration(indexDirectory);
+        return Files.exists(generationDirectory.resolve(DOCUMENTS_FILE))
+                && Files.exists(generationDirectory.resolve(DICTIONARY_FILE))
+                && Files.exists(generationDirectory.resolve(POSTINGS_FILE));
+    }
+
+    /**
+     * Readers must look the generation up once and open all the files from it
+     *
+     * @return the directory with the files of the current generation, or the index directory itself for an index
+     * written before there were generations
+     */
+    public static Path currentGeneration(Path indexDirectory) throws IOException {
+        try {
+            return indexDirectory.resolve(Files.readString(indexDirectory.resolve(CURRENT_FILE), StandardCharsets.UTF_8).trim());
+        } catch (NoSuchFileException e) {
+            return indexDirectory;
+        }
+    }
+
+    public static void write(InvertedIndex index, Path indexDirectory) throws IOException {
+        Files.createDirectories(indexDirectory);
+        long generation = latestGeneration(indexDirectory) + 1;
+        // Fails rather than overwrites if another build got the same number
+        Path generationDirectory = Files.createDirectory(indexDirectory.resolve(GENERATION_PREFIX + generation));
+
+        writeDocuments(index.getDocuments(), generationDirectory.resolve(DOCUMENTS_FILE));
+        writeDictionaryAndPostings(index.getTermToPostings(), generationDirectory.resolve(DICTIONARY_FILE),
+                generationDirectory.resolve(POSTINGS_FILE));
+
+        Path currentFile = Files.createTempFile(indexDirectory, CURRENT_FILE, ".tmp");
+        Files.writeString(currentFile, generationDirectory.getFileName() + "\n", StandardCharsets.UTF_8);
+        Files.move(currentFile, indexDirectory.resolve(CURRENT_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        deleteOldGenerations(indexDirectory, generation);
+    }
+
+    public static InvertedIndex load(Path indexDirectory) throws IOException {
+        Path generationDirectory = currentGeneration(indexDirectory);
+        InvertedIndex index = new InvertedIndex();
+        for (IndexedDocument document : readDocuments(generationDirectory.resolve(DOCUMENTS_FILE))) {
+            index.addDocument(document);
+        }
+
+        try (DataInputStream dictionary = open(generationDirectory.resolve(DICTIONARY_FILE));
+             DataInputStream postings = open(generationDirectory.resolve(POSTINGS_FILE))) {
+            int termCount = dictionary.readInt();
+            int[] termLengths = new int[termCount];
+            int[] documentFrequencies = new int[termCount];
+            for (int i = 0; i < termCount; i++) {
+                dictionary.readInt();
+                termLengths[i] = dictionary.readInt();
+                dictionary.readLong();
+                documentFrequencies[i] = dictionary.readInt();
+            }
+
+            // Postings are written in dictionary order, so both files can be read sequentially
+            for (int i = 0; i < termCount; i++) {
+                byte[] termBytes = dictionary.readNBytes(termLengths[i]);
+                String term = new String(termBytes, StandardCharsets.UTF_8);
+                for (int j = 0; j < documentFrequencies[i]; j++) {
+                    index.addPosting(term, postings.readInt(), postings.readInt());
+                }
+            }
+        }
+        return index;
+    }
+
+    static List<IndexedDocument> readDocuments(Path documentsFile) throws IOException {
+        try (DataInputStream input = open(documentsFile)) {
+            int count = input.readInt();
+            List<IndexedDocument> documents = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String path = new String(input.readNBytes(input.readInt()), StandardCharsets.UTF_8);
+                documents.add(new IndexedDocument(path, input.readLong(), input.readLong()));
+            }
+            return documents;
+        }
+    }
+
+    /**
+     * @return the highest generation in the index directory, 0 if there is none
+     */
+    private static long latestGeneration(Path indexDirectory) throws IOException {
+        long latest = 0;
+        try (DirectoryStream<Path> generations = Files.newDirectoryStream(indexDirectory, GENERATION_PREFIX + "*")) {
+            for (Path generationDirectory : generations) {
+                latest = Math.max(latest, parseGeneration(generationDirectory));
+            }
+        }
+        return latest;
+    }
+
+    private static long parseGeneration(Path generationDirectory) {
+        try {
+            return Long.parseLong(generationDirectory.getFileName().toString().substring(GENERATION_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Keeps the generation before the current one, which a reader may have looked up just before the switch and not
+     * opened yet. Files already opened or mapped stay readable after they are deleted.
+     */
+    private static void deleteOldGenerations(Path indexDirectory, long currentGeneration) {
+        try (DirectoryStream<Path> generations = Files.newDirectoryStream(indexDirectory, GENERATION_PREFIX + "*")) {
+            for (Path generationDirectory : generations) {
+                if (parseGeneration(generationDirectory) < currentGeneration - 1) {
+                    deleteGeneration(generationDirectory);
+                }
+            }
+            // Files of an index written before there were generations
+            deleteGeneration(indexDirectory);
+        } catch (IOException e) {
+            System.out.println("Could not delete old index generations: " + e.getMessage());
+        }
+    }
+
+    private static void deleteGeneration(Path generationDirectory) throws IOException {
+        Files.deleteIfExists(generationDirectory.resolve(DOCUMENTS_FILE));
+        Files.deleteIfExists(generationDirectory.resolve(DICTIONARY_FILE));
+        Files.deleteIfExists(generationDirectory.resolve(POSTINGS_FILE));
+        if (!generationDirectory.getFileName().toString().startsWith(GENERATION_PREFIX)) {
+            return;
+        }
+        Files.deleteIfExists(generationDirectory);
+    }
+
+    private static void writeDocuments(List<IndexedDocument> documents, Path documentsFile) throws IOException {
+        try (DataOutputStream output = create(documentsFile)) {
+            output.writeInt(documents.size());
+            for (IndexedDocument document : documents) {
+                byte[] pathBytes = document.getPath().getBytes(StandardCharsets.UTF_8);
+                output.writeInt(pathBytes.length);
+                output.write(pathBytes);
+                output.writeLong(document.getLastModified());
+                output.writeLong(document.getLength());
+            }
+        }
+    }
+
+    private static void writeDictionaryAndPostings(Map<String, ? extends Postings> termToPostings,
+                                                   Path dictionaryFile,
+                                                   Path postingsFile) throws IOException {
+        List<String> terms = new ArrayList<>(termToPostings.keySet());
+        byte[][] termBytes = new byte[terms.size()][];
+        for (int i = 0; i < terms.size(); i++) {
+            termBytes[i] = terms.get(i).getBytes(StandardCharsets.UTF_8);
+        }
+        Integer[] order = new Integer[terms.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Arrays.compareUnsigned(termBytes[a], termBytes[b]));
+
+        try (DataOutputStream dictionary = create(dictionaryFile);
+             DataOutputStream postingsOutput = create(postingsFile)) {
+            dictionary.writeInt(terms.size());
+
+            int termOffset = 0;
+            long postingsOffset = 0;
+            for (int i : order) {
+                Postings postings = termToPostings.get(terms.get(i));
+                dictionary.writeInt(termOffset);
+                dictionary.writeInt(termBytes[i].length);
+                dictionary.writeLong(postingsOffset);
+                dictionary.writeInt(postings.size());
+
+                for (int j = 0; j < postings.size(); j++) {
+                    postingsOutput.writeInt(postings.getDocumentId(j));
+                    postingsOutput.writeInt(postings.getCount(j));
+                }
+                termOffset += termBytes[i].length;
+                postingsOffset += (long) postings.size() * POSTING_SIZE;
+            }
+
+            for (int i : order) {
+                dictionary.write(termBytes[i]);
+            }
+        }
+    }
+
+    private static DataInputStream open(Path file) throws IOException {
+        return new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+    }
+
+    private static DataOutputStream create(Path file) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)));
+    }
+}
@@ -0,0 +1,95 @@
+package distributed.system.tfidf.index;
+
+import distributed.system.tfidf.search.CorpusListing;
+import distributed.system.tfidf.search.DocumentsDirectory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the index of a worker in line with its documents. Whenever the listing of the documents changes, the index is
+ * brought up to date with {@link IndexBuilder#update}, which retokenizes only new and modified documents, and the new
+ * generation is mapped and swapped in. Until then, a document modified since the index was built is read from disk.
+ */
+public class IndexRefresher implements AutoCloseable {
+    private final Path indexDirectory;
+    private final IndexBuilder indexBuilder;
+    private final DocumentsDirectory documentsDirectory;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "index-refresher");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile DocumentIndex documentIndex;
+    // Guarded by this
+    private Path indexedGeneration;
+    private boolean refreshed;
+    private long indexedVersion;
+
+    /**
+     * Maps the current generation, if the index has been built before
+     */
+    public IndexRefresher(Path indexDirectory, DocumentsDirectory documentsDirectory) throws IOException {
+        this.indexDirectory = indexDirectory;
+        this.indexBuilder = new IndexBuilder(indexDirectory);
+        this.documentsDirectory = documentsDirectory;
+        if (IndexFiles.exists(indexDirectory)) {
+            indexedGeneration = IndexFiles.currentGeneration(indexDirectory);
+            documentIndex = MappedDocumentIndex.open(indexDirectory);
+        }
+    }
+
+    /**
+     * @return the index as of the last refresh, or null if none has been built yet. Document ids differ between
+     * generations, so a caller reads it once and answers a whole task from it.
+     */
+    public DocumentIndex getDocumentIndex() {
+        return documentIndex;
+    }
+
+    /**
+     * Refreshes the index now and then every {@code interval}
+     */
+    public void start(Duration interval) {
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                refresh();
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+            }
+        }, 0, interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Updates the index if the documents changed since the last refresh
+     *
+     * @return true if a new generation was swapped in
+     */
+    public synchronized boolean refresh() throws IOException {
+        CorpusListing listing = documentsDirectory.getListing();
+        if (refreshed && listing.getVersion() == indexedVersion) {
+            return false;
+        }
+        indexBuilder.update(listing.getDocuments());
+        refreshed = true;
+        indexedVersion = listing.getVersion();
+
+        Path generation = IndexFiles.currentGeneration(indexDirectory);
+        if (generation.equals(indexedGeneration)) {
+            return false;
+        }
+        documentIndex = MappedDocumentIndex.open(indexDirectory);
+        indexedGeneration = generation;
+        System.out.println("Swapped in index " + generation);
+        return true;
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
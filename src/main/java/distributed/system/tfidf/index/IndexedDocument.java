@@ -0,0 +1,28 @@
+package distributed.system.tfidf.index;
+
+public class IndexedDocument {
+    private final String path;
+    private final long lastModified;
+    private final long length;
+
+    public IndexedDocument(String path, long lastModified, long length) {
+        this.path = path;
+        this.lastModified = lastModified;
+        this.length = length;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * @return the number of words in the document
+     */
+    public long getLength() {
+        return length;
+    }
+}
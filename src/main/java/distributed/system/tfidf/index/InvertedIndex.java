@@ -0,0 +1,58 @@
+package distributed.system.tfidf.index;
+
+import distributed.system.tfidf.search.TermCounter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Heap resident inverted index. Documents must be added in increasing id order.
+ */
+public class InvertedIndex implements DocumentIndex {
+    private final List<IndexedDocument> documents = new ArrayList<>();
+    private final Map<String, Integer> documentToId = new HashMap<>();
+    private final Map<String, ArrayPostings> termToPostings = new HashMap<>();
+
+    int addDocument(IndexedDocument document) {
+        int documentId = documents.size();
+        documents.add(document);
+        documentToId.put(document.getPath(), documentId);
+        return documentId;
+    }
+
+    void addPosting(String term, int documentId, int count) {
+        termToPostings.computeIfAbsent(term, t -> new ArrayPostings()).add(documentId, count);
+    }
+
+    void addDocument(IndexedDocument document, TermCounter termCounter) {
+        int documentId = addDocument(document);
+        termCounter.forEach((term, count) -> addPosting(term, documentId, count));
+    }
+
+    public List<IndexedDocument> getDocuments() {
+        return Collections.unmodifiableList(documents);
+    }
+
+    public Map<String, ? extends Postings> getTermToPostings() {
+        return Collections.unmodifiableMap(termToPostings);
+    }
+
+    @Override
+    public int getDocumentId(String document) {
+        return documentToId.getOrDefault(document, NOT_INDEXED);
+    }
+
+    @Override
+    public IndexedDocument getDocument(int documentId) {
+        return documents.get(documentId);
+    }
+
+    @Override
+    public Postings getPostings(String term) {
+        Postings postings = termToPostings.get(term);
+        return postings == null ? Postings.EMPTY : postings;
+    }
+}
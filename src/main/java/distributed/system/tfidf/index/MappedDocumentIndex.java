@@ -0,0 +1,136 @@
+package distributed.system.tfidf.index;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-only index that decodes the dictionary and postings straight from memory mapped files.
+ * The pages live in the OS page cache, so workers on the same machine share them instead of
+ * each holding a copy on the heap. Only the document table is read onto the heap.
+ */
+public class MappedDocumentIndex implements DocumentIndex {
+    private final List<IndexedDocument> documents;
+    private final Map<String, Integer> documentToId = new HashMap<>();
+    private final MappedByteBuffer dictionary;
+    private final MappedByteBuffer postings;
+    private final int termCount;
+    private final int termsOffset;
+
+    private MappedDocumentIndex(List<IndexedDocument> documents, MappedByteBuffer dictionary, MappedByteBuffer postings) {
+        this.documents = documents;
+        for (int i = 0; i < documents.size(); i++) {
+            documentToId.put(documents.get(i).getPath(), i);
+        }
+        this.dictionary = dictionary;
+        this.postings = postings;
+        this.termCount = dictionary.getInt(0);
+        this.termsOffset = IndexFiles.DICTIONARY_HEADER_SIZE + termCount * IndexFiles.DICTIONARY_ENTRY_SIZE;
+    }
+
+    public static MappedDocumentIndex open(Path indexDirectory) throws IOException {
+        Path generationDirectory = IndexFiles.currentGeneration(indexDirectory);
+        List<IndexedDocument> documents = IndexFiles.readDocuments(generationDirectory.resolve(IndexFiles.DOCUMENTS_FILE));
+        MappedByteBuffer dictionary = map(generationDirectory.resolve(IndexFiles.DICTIONARY_FILE));
+        MappedByteBuffer postings = map(generationDirectory.resolve(IndexFiles.POSTINGS_FILE));
+        return new MappedDocumentIndex(documents, dictionary, postings);
+    }
+
+    private static MappedByteBuffer map(Path file) throws IOException {
+        // The mapping stays valid after the channel is closed
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(String.format("%s is too large to map (%d bytes)", file, channel.size()));
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    @Override
+    public int getDocumentId(String document) {
+        return documentToId.getOrDefault(document, NOT_INDEXED);
+    }
+
+    @Override
+    public IndexedDocument getDocument(int documentId) {
+        return documents.get(documentId);
+    }
+
+    @Override
+    public Postings getPostings(String term) {
+        int entry = findEntry(term.getBytes(StandardCharsets.UTF_8));
+        if (entry < 0) {
+            return Postings.EMPTY;
+        }
+        int entryOffset = IndexFiles.DICTIONARY_HEADER_SIZE + entry * IndexFiles.DICTIONARY_ENTRY_SIZE;
+        long postingsOffset = dictionary.getLong(entryOffset + 2 * Integer.BYTES);
+        int documentFrequency = dictionary.getInt(entryOffset + 2 * Integer.BYTES + Long.BYTES);
+        return new MappedPostings(postings, (int) postingsOffset, documentFrequency);
+    }
+
+    private int findEntry(byte[] term) {
+        int low = 0;
+        int high = termCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compareTerm(middle, term);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private int compareTerm(int entry, byte[] term) {
+        int entryOffset = IndexFiles.DICTIONARY_HEADER_SIZE + entry * IndexFiles.DICTIONARY_ENTRY_SIZE;
+        int termOffset = termsOffset + dictionary.getInt(entryOffset);
+        int termLength = dictionary.getInt(entryOffset + Integer.BYTES);
+
+        int length = Math.min(termLength, term.length);
+        for (int i = 0; i < length; i++) {
+            int comparison = Byte.compareUnsigned(dictionary.get(termOffset + i), term[i]);
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return termLength - term.length;
+    }
+
+    private static class MappedPostings implements Postings {
+        private final ByteBuffer buffer;
+        private final int offset;
+        private final int size;
+
+        MappedPostings(ByteBuffer buffer, int offset, int size) {
+            this.buffer = buffer;
+            this.offset = offset;
+            this.size = size;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public int getDocumentId(int index) {
+            return buffer.getInt(offset + index * IndexFiles.POSTING_SIZE);
+        }
+
+        @Override
+        public int getCount(int index) {
+            return buffer.getInt(offset + index * IndexFiles.POSTING_SIZE + Integer.BYTES);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package distributed.system.tfidf.index;
+
+/**
+ * The documents containing a term, ordered by document id, with the number of occurrences in each
+ */
+public interface Postings {
+    Postings EMPTY = new ArrayPostings();
+
+    int size();
+
+    int getDocumentId(int index);
+
+    int getCount(int index);
+
+    default int getTermCount(int documentId) {
+        int low = 0;
+        int high = size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int middleDocumentId = getDocumentId(middle);
+            if (middleDocumentId < documentId) {
+                low = middle + 1;
+            } else if (middleDocumentId > documentId) {
+                high = middle - 1;
+            } else {
+                return getCount(middle);
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,229 @@
+package distributed.system.tfidf.model;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact wire format for {@link Task} and {@link Result}, an alternative to Java serialization.
+ * <pre>
+ * string : varint byteLength, UTF-8 bytes
+ * Task   : byte version, varint termCount, termCount x string, varint documentCount, documentCount x string
+ * Result : byte version, varint termCount, termCount x string (the term table),
+ *          varint documentCount, documentCount x (string document, varint frequencyCount,
+ *                                                 frequencyCount x (varint termIndex, double frequency))
+ * </pre>
+ */
+public class BinaryCodec {
+    public static final String CONTENT_TYPE = "application/x-tfidf-binary";
+    private static final byte VERSION = 1;
+    // Terms and document paths are far shorter, so a longer string means the data is malformed
+    static final int MAX_STRING_BYTES = 64 * 1024;
+    // Lists are grown as their elements arrive rather than sized by the count up front, which the sender controls
+    private static final int MAX_INITIAL_CAPACITY = 1024;
+
+    public static byte[] encodeTask(Task task) {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        try {
+            writeTask(task, byteArrayOutputStream);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return new byte[]{};
+        }
+        return byteArrayOutputStream.toByteArray();
+    }
+
+    /**
+     * @throws UncheckedIOException if the data is not a task in this format
+     */
+    public static Task decodeTask(byte[] data) {
+        try {
+            return readTask(new ByteArrayInputStream(data));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not decode the task", e);
+        }
+    }
+
+    public static byte[] encodeResult(Result result) {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        try {
+            writeResult(result, byteArrayOutputStream);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return new byte[]{};
+        }
+        return byteArrayOutputStream.toByteArray();
+    }
+
+    /**
+     * @throws UncheckedIOException if the data is not a result in this format
+     */
+    public static Result decodeResult(byte[] data) {
+        try {
+            return readResult(new ByteArrayInputStream(data));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not decode the result", e);
+        }
+    }
+
+    public static void writeTask(Task task, OutputStream outputStream) throws IOException {
+        DataOutputStream output = new DataOutputStream(outputStream);
+        output.writeByte(VERSION);
+        writeStrings(task.getSearchTerms(), output);
+        writeStrings(task.getDocuments(), output);
+        output.flush();
+    }
+
+    public static Task readTask(InputStream inputStream) throws IOException {
+        DataInputStream input = new DataInputStream(inputStream);
+        readVersion(input);
+        List<String> searchTerms = readStrings(input);
+        List<String> documents = readStrings(input);
+        return new Task(searchTerms, documents);
+    }
+
+    public static void writeResult(Result result, OutputStream outputStream) throws IOException {
+        DataOutputStream output = new DataOutputStream(outputStream);
+        Map<String, DocumentData> documentToDocumentData = result.getDocumentToDocumentData();
+
+        Map<String, Integer> termToIndex = new LinkedHashMap<>();
+        for (DocumentData documentData : documentToDocumentData.values()) {
+            documentData.forEachTermFrequency((term, frequency) -> termToIndex.putIfAbsent(term, termToIndex.size()));
+        }
+
+        output.writeByte(VERSION);
+        writeStrings(termToIndex.keySet(), output);
+        writeVarInt(documentToDocumentData.size(), output);
+        int[] termIndexes = new int[termToIndex.size()];
+        double[] frequencies = new double[termToIndex.size()];
+        int[] frequencyCount = new int[1];
+        for (Map.Entry<String, DocumentData> documentEntry : documentToDocumentData.entrySet()) {
+            DocumentData documentData = documentEntry.getValue();
+            frequencyCount[0] = 0;
+            documentData.forEachTermFrequency((term, frequency) -> {
+                termIndexes[frequencyCount[0]] = termToIndex.get(term);
+                frequencies[frequencyCount[0]] = frequency;
+                frequencyCount[0]++;
+            });
+
+            writeString(documentEntry.getKey(), output);
+            writeVarInt(frequencyCount[0], output);
+            for (int i = 0; i < frequencyCount[0]; i++) {
+                writeVarInt(termIndexes[i], output);
+                output.writeDouble(frequencies[i]);
+            }
+        }
+        output.flush();
+    }
+
+    public static Result readResult(InputStream inputStream) throws IOException {
+        DataInputStream input = new DataInputStream(inputStream);
+        readVersion(input);
+        List<String> terms = readStrings(input);
+
+        Result result = new Result();
+        int documentCount = readLength(input);
+        for (int i = 0; i < documentCount; i++) {
+            String document = readString(input);
+            DocumentData documentData = new DocumentData();
+            int frequencyCount = readLength(input);
+            for (int j = 0; j < frequencyCount; j++) {
+                int termIndex = readVarInt(input);
+                if (termIndex < 0 || termIndex >= terms.size()) {
+                    throw new IOException(String.format("Term index %d outside the term table of %d terms", termIndex, terms.size()));
+                }
+                documentData.putTermFrequency(terms.get(termIndex), input.readDouble());
+            }
+            result.addDocumentData(document, documentData);
+        }
+        return result;
+    }
+
+    private static void readVersion(DataInputStream input) throws IOException {
+        byte version = input.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported binary format version " + version);
+        }
+    }
+
+    private static void writeStrings(Iterable<String> strings, DataOutputStream output) throws IOException {
+        List<String> list = new ArrayList<>();
+        strings.forEach(list::add);
+        writeVarInt(list.size(), output);
+        for (String string : list) {
+            writeString(string, output);
+        }
+    }
+
+    private static List<String> readStrings(DataInputStream input) throws IOException {
+        int count = readLength(input);
+        List<String> strings = new ArrayList<>(Math.min(count, MAX_INITIAL_CAPACITY));
+        for (int i = 0; i < count; i++) {
+            strings.add(readString(input));
+        }
+        return strings;
+    }
+
+    private static void writeString(String string, DataOutputStream output) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(bytes.length, output);
+        output.write(bytes);
+    }
+
+    private static String readString(DataInputStream input) throws IOException {
+        int length = readLength(input);
+        if (length > MAX_STRING_BYTES) {
+            throw new IOException(String.format("String of %d bytes is longer than the limit of %d", length, MAX_STRING_BYTES));
+        }
+        byte[] bytes = input.readNBytes(length);
+        if (bytes.length < length) {
+            throw new EOFException(String.format("String of %d bytes ends after %d", length, bytes.length));
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a count or byte length, which a varint of 5 bytes could make negative
+     */
+    private static int readLength(DataInputStream input) throws IOException {
+        int length = readVarInt(input);
+        if (length < 0) {
+            throw new IOException("Negative length " + length);
+        }
+        return length;
+    }
+
+    static void writeVarInt(int value, DataOutputStream output) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            output.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.writeByte(value);
+    }
+
+    static int readVarInt(DataInputStream input) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = input.read();
+            if (b == -1) {
+                throw new EOFException();
+            }
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+}
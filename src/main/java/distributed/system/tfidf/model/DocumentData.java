@@ -24,18 +24,86 @@
 
 package distributed.system.tfidf.model;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.function.ObjDoubleConsumer;
 
+/**
+ * Term frequencies of one document, stored in parallel arrays in insertion order.
+ * Documents of the same task hold few terms, so a linear scan beats hashing, and the term strings are shared
+ * between all the documents of a task.
+ */
 public class DocumentData implements Serializable {
-    private Map<String, Double> termToFrequency = new HashMap<>();
+    private static final long serialVersionUID = 2L;
+    private static final int INITIAL_CAPACITY = 4;
+
+    private transient String[] terms = new String[INITIAL_CAPACITY];
+    private transient double[] frequencies = new double[INITIAL_CAPACITY];
+    private transient int size;
 
     public void putTermFrequency(String term, double frequency) {
-        termToFrequency.put(term, frequency);
+        int index = indexOf(term);
+        if (index >= 0) {
+            frequencies[index] = frequency;
+            return;
+        }
+        if (size == terms.length) {
+            terms = Arrays.copyOf(terms, size * 2);
+            frequencies = Arrays.copyOf(frequencies, size * 2);
+        }
+        terms[size] = term;
+        frequencies[size] = frequency;
+        size++;
     }
 
+    /**
+     * @return the frequency of the term, or 0 if the document has no frequency for it
+     */
     public double getFrequency(String term) {
-        return termToFrequency.get(term);
+        int index = indexOf(term);
+        return index >= 0 ? frequencies[index] : 0.0;
+    }
+
+    public void forEachTermFrequency(ObjDoubleConsumer<String> consumer) {
+        for (int i = 0; i < size; i++) {
+            consumer.accept(terms[i], frequencies[i]);
+        }
+    }
+
+    private int indexOf(String term) {
+        for (int i = 0; i < size; i++) {
+            if (terms[i] == term) {
+                return i;
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            if (terms[i].equals(term)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void writeObject(ObjectOutputStream output) throws IOException {
+        output.defaultWriteObject();
+        output.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            output.writeObject(terms[i]);
+            output.writeDouble(frequencies[i]);
+        }
+    }
+
+    private void readObject(ObjectInputStream input) throws IOException, ClassNotFoundException {
+        input.defaultReadObject();
+        size = input.readInt();
+        terms = new String[Math.max(size, 1)];
+        frequencies = new double[Math.max(size, 1)];
+        for (int i = 0; i < size; i++) {
+            terms[i] = (String) input.readObject();
+            frequencies[i] = input.readDouble();
+        }
     }
 }
@@ -0,0 +1,36 @@
+package distributed.system.tfidf.model;
+
+import java.io.Serializable;
+import java.util.Comparator;
+
+public class DocumentScore implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Highest score first, ties broken by document name so the order does not depend on map iteration order
+     */
+    public static final Comparator<DocumentScore> BY_RANK = Comparator.comparingDouble(DocumentScore::getScore).reversed()
+            .thenComparing(DocumentScore::getDocument);
+
+    private final String document;
+    private final double score;
+
+    public DocumentScore(String document, double score) {
+        this.document = document;
+        // Adding zero turns -0.0 into 0.0, so both rank as the same score
+        this.score = score + 0.0;
+    }
+
+    public String getDocument() {
+        return document;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s - score : %f", document, score);
+    }
+}
@@ -0,0 +1,37 @@
+package distributed.system.tfidf.model;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The ranked documents of a search, and the documents of the shards no worker answered for before the deadline
+ */
+public class SearchResult {
+    private final List<DocumentScore> topDocuments;
+    private final List<List<String>> missingShards;
+
+    public SearchResult(List<DocumentScore> topDocuments, List<List<String>> missingShards) {
+        this.topDocuments = topDocuments;
+        this.missingShards = missingShards;
+    }
+
+    public static SearchResult empty() {
+        return new SearchResult(Collections.emptyList(), Collections.emptyList());
+    }
+
+    public List<DocumentScore> getTopDocuments() {
+        return Collections.unmodifiableList(topDocuments);
+    }
+
+    public List<List<String>> getMissingShards() {
+        return Collections.unmodifiableList(missingShards);
+    }
+
+    /**
+     * @return true if some documents were not searched, so the ranking and the document frequencies behind it
+     * only cover part of the corpus
+     */
+    public boolean isPartial() {
+        return !missingShards.isEmpty();
+    }
+}
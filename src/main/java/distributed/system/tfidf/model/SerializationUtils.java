@@ -27,6 +27,8 @@ package distributed.system.tfidf.model;
 import java.io.*;
 
 public class SerializationUtils {
+    public static final String CONTENT_TYPE = "application/x-java-serialized-object";
+
     public static byte[] serialize(Object object) {
         ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
         ObjectOutput objectOutput = null;
@@ -53,4 +55,19 @@ public class SerializationUtils {
         }
         return null;
     }
+
+    public static void writeObject(Object object, OutputStream outputStream) throws IOException {
+        ObjectOutputStream objectOutput = new ObjectOutputStream(outputStream);
+        objectOutput.writeObject(object);
+        objectOutput.flush();
+    }
+
+    public static Object readObject(InputStream inputStream) throws IOException {
+        ObjectInputStream objectInput = new ObjectInputStream(inputStream);
+        try {
+            return objectInput.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new InvalidClassException(e.getMessage());
+        }
+    }
 }
@@ -0,0 +1,107 @@
+package distributed.system.tfidf.search;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The documents of a directory, sorted, with the size and modification time of each and the
+ * {@link CorpusVersion} they add up to. Each document is looked at once, when the directory is listed; see
+ * {@link DocumentsDirectory} for reusing a listing across queries.
+ */
+public class CorpusListing {
+    private static final CorpusListing EMPTY = new CorpusListing(new String[0], new long[0], new long[0]);
+
+    private final List<String> documents;
+    private final long[] documentBytes;
+    private final long[] lastModified;
+    private final long version;
+
+    private CorpusListing(String[] documents, long[] documentBytes, long[] lastModified) {
+        this.documents = Collections.unmodifiableList(Arrays.asList(documents));
+        this.documentBytes = documentBytes;
+        this.lastModified = lastModified;
+        this.version = CorpusVersion.of(this.documents, documentBytes, lastModified);
+    }
+
+    /**
+     * @return the regular files in {@code directory}, or no documents if it cannot be listed
+     */
+    public static CorpusListing of(String directory) {
+        List<String> names = new ArrayList<>();
+        List<BasicFileAttributes> attributes = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(Paths.get(directory))) {
+            for (Path file : files) {
+                BasicFileAttributes fileAttributes;
+                try {
+                    fileAttributes = Files.readAttributes(file, BasicFileAttributes.class);
+                } catch (NoSuchFileException e) {
+                    // Removed since the directory was read
+                    continue;
+                }
+                if (fileAttributes.isRegularFile()) {
+                    names.add(directory + "/" + file.getFileName());
+                    attributes.add(fileAttributes);
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Cannot list documents in " + directory);
+            return EMPTY;
+        }
+
+        Integer[] order = new Integer[names.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (first, second) -> names.get(first).compareTo(names.get(second)));
+        String[] documents = new String[order.length];
+        long[] documentBytes = new long[order.length];
+        long[] lastModified = new long[order.length];
+        for (int i = 0; i < order.length; i++) {
+            documents[i] = names.get(order[i]);
+            documentBytes[i] = attributes.get(order[i]).size();
+            lastModified[i] = attributes.get(order[i]).lastModifiedTime().toMillis();
+        }
+        return new CorpusListing(documents, documentBytes, lastModified);
+    }
+
+    /**
+     * @return the documents in sorted order
+     */
+    public List<String> getDocuments() {
+        return documents;
+    }
+
+    /**
+     * @return the size of each document, in the order of {@link #getDocuments()}
+     */
+    public long[] getDocumentBytes() {
+        return documentBytes;
+    }
+
+    /**
+     * @return the modification time of each document in milliseconds, in the order of {@link #getDocuments()}
+     */
+    public long[] getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * @return the position of the document in {@link #getDocuments()}, or a negative number if it is not listed
+     */
+    public int indexOf(String document) {
+        return Collections.binarySearch(documents, document);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+}
@@ -0,0 +1,24 @@
+package distributed.system.tfidf.search;
+
+import java.util.List;
+
+public class CorpusVersion {
+    /**
+     * Fingerprints a set of documents by path, size and modification time. Any document being added,
+     * removed or modified changes the version. The sizes and modification times are the ones read when the
+     * corpus was listed, see {@link CorpusListing}, so no file is touched here.
+     *
+     * @param sortedDocuments the documents in sorted order
+     * @param documentBytes   the size of each document
+     * @param lastModified    the modification time of each document
+     */
+    public static long of(List<String> sortedDocuments, long[] documentBytes, long[] lastModified) {
+        long version = 1125899906842597L;
+        for (int i = 0; i < sortedDocuments.size(); i++) {
+            version = 31 * version + sortedDocuments.get(i).hashCode();
+            version = 31 * version + documentBytes[i];
+            version = 31 * version + lastModified[i];
+        }
+        return version;
+    }
+}
@@ -0,0 +1,105 @@
+package distributed.system.tfidf.search;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToIntFunction;
+
+/**
+ * Remembers in how many documents each term appears, so the inverse document frequency of a repeated term
+ * does not have to be recounted over every document. Entries belong to a corpus version, and a query for a new
+ * version starts a new, empty generation of them.
+ * <p>
+ * A query that listed the corpus just before it changed can still come in after the new version's first query.
+ * Its version was current before, so it is counted without the cache rather than switching back to it, which
+ * would throw away the entries of the newer version.
+ */
+public class DocumentFrequencyCache {
+    // Versions are fingerprints, not ordered, so the ones replaced are remembered to tell them from new ones
+    private static final int RETIRED_VERSIONS = 16;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private volatile Generation generation;
+    // Guarded by this
+    private final Deque<Long> retiredVersions = new ArrayDeque<>();
+
+    public int getDocumentFrequency(String term, long corpusVersion, ToIntFunction<String> documentFrequencyCounter) {
+        Generation generation = this.generation;
+        if (generation == null || generation.version != corpusVersion) {
+            generation = switchVersion(corpusVersion);
+            if (generation == null) {
+                misses.increment();
+                return documentFrequencyCounter.applyAsInt(term);
+            }
+        }
+
+        Integer documentFrequency = generation.termToDocumentFrequency.get(term);
+        if (documentFrequency != null) {
+            hits.increment();
+            return documentFrequency;
+        }
+        misses.increment();
+        int counted = documentFrequencyCounter.applyAsInt(term);
+        // Goes into the map of the version it was counted for, even if a newer one has been switched to meanwhile
+        generation.termToDocumentFrequency.put(term, counted);
+        return counted;
+    }
+
+    public synchronized void invalidate() {
+        if (generation != null) {
+            generation = new Generation(generation.version);
+        }
+        invalidations.increment();
+    }
+
+    /**
+     * @return the generation of the version, or null if it was replaced before
+     */
+    private synchronized Generation switchVersion(long corpusVersion) {
+        if (generation != null && generation.version == corpusVersion) {
+            return generation;
+        }
+        if (retiredVersions.contains(corpusVersion)) {
+            return null;
+        }
+        if (generation != null) {
+            if (retiredVersions.size() == RETIRED_VERSIONS) {
+                retiredVersions.removeFirst();
+            }
+            retiredVersions.addLast(generation.version);
+            invalidations.increment();
+        }
+        generation = new Generation(corpusVersion);
+        return generation;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getInvalidationCount() {
+        return invalidations.sum();
+    }
+
+    public int size() {
+        Generation generation = this.generation;
+        return generation == null ? 0 : generation.termToDocumentFrequency.size();
+    }
+
+    private static class Generation {
+        private final long version;
+        private final Map<String, Integer> termToDocumentFrequency = new ConcurrentHashMap<>();
+
+        Generation(long version) {
+            this.version = version;
+        }
+    }
+}
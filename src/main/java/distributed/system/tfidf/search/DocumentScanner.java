@@ -0,0 +1,108 @@
+package distributed.system.tfidf.search;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Streams a document through the tokenizer in fixed size chunks. Lines are split like {@link java.io.BufferedReader#readLine()},
+ * and only a line crossing a chunk boundary is copied, so memory is bounded by the chunk size and the longest line
+ * rather than the size of the document. A scanner is not thread safe.
+ */
+public class DocumentScanner {
+    private static final int DEFAULT_CHUNK_SIZE = 8192;
+
+    private final char[] chunk;
+    private final CharArraySequence chunkView = new CharArraySequence();
+    private final CharArraySequence carryView = new CharArraySequence();
+    private final Tokenizer tokenizer = new Tokenizer();
+    private char[] carry = new char[256];
+    private int carryLength;
+
+    public DocumentScanner() {
+        this(DEFAULT_CHUNK_SIZE);
+    }
+
+    public DocumentScanner(int chunkSize) {
+        this.chunk = new char[chunkSize];
+        this.chunkView.array = chunk;
+    }
+
+    public void scan(String document, Tokenizer.TokenConsumer consumer) throws IOException {
+        try (Reader reader = new FileReader(document)) {
+            scan(reader, consumer);
+        }
+    }
+
+    public void scan(Reader reader, Tokenizer.TokenConsumer consumer) throws IOException {
+        carryLength = 0;
+        boolean skipLineFeed = false;
+        int read;
+        while ((read = reader.read(chunk)) != -1) {
+            int lineStart = 0;
+            for (int i = 0; i < read; i++) {
+                char c = chunk[i];
+                if (skipLineFeed) {
+                    skipLineFeed = false;
+                    if (c == '\n') {
+                        lineStart = i + 1;
+                        continue;
+                    }
+                }
+                if (c == '\n' || c == '\r') {
+                    emitLine(lineStart, i, consumer);
+                    skipLineFeed = c == '\r';
+                    lineStart = i + 1;
+                }
+            }
+            appendToCarry(lineStart, read);
+        }
+        if (carryLength > 0) {
+            tokenizeCarry(consumer);
+        }
+    }
+
+    private void emitLine(int start, int end, Tokenizer.TokenConsumer consumer) {
+        if (carryLength == 0) {
+            tokenizer.tokenize(chunkView, start, end, consumer);
+        } else {
+            appendToCarry(start, end);
+            tokenizeCarry(consumer);
+        }
+    }
+
+    private void tokenizeCarry(Tokenizer.TokenConsumer consumer) {
+        carryView.array = carry;
+        tokenizer.tokenize(carryView, 0, carryLength, consumer);
+        carryLength = 0;
+    }
+
+    private void appendToCarry(int start, int end) {
+        int length = end - start;
+        if (carryLength + length > carry.length) {
+            carry = Arrays.copyOf(carry, Math.max(carryLength + length, carry.length * 2));
+        }
+        System.arraycopy(chunk, start, carry, carryLength, length);
+        carryLength += length;
+    }
+
+    private static class CharArraySequence implements CharSequence {
+        private char[] array;
+
+        @Override
+        public int length() {
+            return array.length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return array[index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(array, start, end - start);
+        }
+    }
+}
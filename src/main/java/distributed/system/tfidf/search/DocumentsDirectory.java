@@ -0,0 +1,59 @@
+package distributed.system.tfidf.search;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Keeps the last {@link CorpusListing} of a directory, so a query costs one look at the directory rather than one at
+ * every document. The directory is listed again once its modification time changes, which adding, removing or
+ * renaming a document does, and at least every refresh interval, which catches a document modified in place.
+ */
+public class DocumentsDirectory {
+    public static final Duration DEFAULT_REFRESH_INTERVAL = Duration.ofSeconds(1);
+
+    private final String directory;
+    private final Path path;
+    private final long refreshIntervalNanos;
+    private CorpusListing listing;
+    private long listedNanos;
+    private FileTime directoryLastModified;
+
+    public DocumentsDirectory(String directory) {
+        this(directory, DEFAULT_REFRESH_INTERVAL);
+    }
+
+    public DocumentsDirectory(String directory, Duration refreshInterval) {
+        this.directory = directory;
+        this.path = Paths.get(directory);
+        this.refreshIntervalNanos = refreshInterval.toNanos();
+    }
+
+    /**
+     * @return the documents as last listed, listing the directory again first if it may have changed since
+     */
+    public synchronized CorpusListing getListing() {
+        long now = System.nanoTime();
+        FileTime lastModified = getDirectoryLastModified();
+        if (listing == null || !Objects.equals(lastModified, directoryLastModified)
+                || now - listedNanos >= refreshIntervalNanos) {
+            // Read before listing, so a change made while listing is seen by the next call
+            directoryLastModified = lastModified;
+            listedNanos = now;
+            listing = CorpusListing.of(directory);
+        }
+        return listing;
+    }
+
+    private FileTime getDirectoryLastModified() {
+        try {
+            return Files.getLastModifiedTime(path);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package distributed.system.tfidf.search;
+
+import distributed.system.tfidf.model.DocumentData;
+import distributed.system.tfidf.model.Result;
+import distributed.system.tfidf.model.Task;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Least recently used cache of task results, bounded by an estimate of the bytes it retains.
+ * <p>
+ * Entries are keyed on the lower cased, sorted search terms, the sorted documents and a version computed from the
+ * documents' sizes and modification times, so tasks that differ only in term order or case share an entry.
+ * Frequencies are stored per lower cased term and handed back under the spelling of the terms in each task.
+ * When a request sees a document with a new modification time, every entry containing that document is dropped,
+ * and so is every entry containing a document that no longer exists. The entries of each document are indexed,
+ * so dropping them costs as much as there are entries to drop, not as much as there are entries.
+ * <p>
+ * Sizes and modification times are taken from the listing of a {@link DocumentsDirectory} when one is given, so
+ * a request does not look at its documents again. Documents outside the directory are looked at on every request.
+ */
+public class ResultCache {
+    private static final int ENTRY_OVERHEAD_BYTES = 128;
+    private static final int STRING_OVERHEAD_BYTES = 48;
+
+    private final long maxBytes;
+    private final DocumentsDirectory documentsDirectory;
+    private final LinkedHashMap<Key, CachedFrequencies> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // The keys of the entries containing each document
+    private final Map<String, Set<Key>> documentToKeys = new HashMap<>();
+    // The modification time each document had when a request last saw it, until the document disappears
+    private final Map<String, Long> documentToLastModified = new HashMap<>();
+    private CorpusListing lastListing;
+    private long bytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public ResultCache(long maxBytes) {
+        this(maxBytes, null);
+    }
+
+    /**
+     * @param documentsDirectory the directory the documents of the tasks are listed in, or null to look at every
+     *                           document of a task on each request
+     */
+    public ResultCache(long maxBytes, DocumentsDirectory documentsDirectory) {
+        this.maxBytes = maxBytes;
+        this.documentsDirectory = documentsDirectory;
+    }
+
+    /**
+     * Returns the cached result of the task, or computes and caches it. The computation runs outside the cache lock.
+     */
+    public Result getOrCompute(Task task, Function<Task, Result> computeResult) {
+        Key key = createKey(task);
+        CachedFrequencies cached;
+        synchronized (this) {
+            cached = entries.get(key);
+        }
+        if (cached != null) {
+            hits.increment();
+            return cached.toResult(task.getSearchTerms());
+        }
+
+        misses.increment();
+        Result result = computeResult.apply(task);
+        CachedFrequencies frequencies = new CachedFrequencies(key, task.getSearchTerms(), result);
+        synchronized (this) {
+            if (frequencies.bytes <= maxBytes && entries.put(key, frequencies) == null) {
+                bytes += frequencies.bytes;
+                for (String document : key.documents) {
+                    documentToKeys.computeIfAbsent(document, d -> new HashSet<>()).add(key);
+                }
+                evict();
+            }
+        }
+        return result;
+    }
+
+    public synchronized void invalidateAll() {
+        invalidations.add(entries.size());
+        entries.clear();
+        documentToKeys.clear();
+        documentToLastModified.clear();
+        bytes = 0;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public double getHitRatio() {
+        long hitCount = hits.sum();
+        long requests = hitCount + misses.sum();
+        return requests == 0 ? 0 : (double) hitCount / requests;
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public long getInvalidationCount() {
+        return invalidations.sum();
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private Key createKey(Task task) {
+        String[] terms = new TreeSet<>(task.getSearchTerms().stream().map(Tokenizer::lowerCase).toList()).toArray(new String[0]);
+        String[] documents = task.getDocuments().stream().distinct().sorted().toArray(String[]::new);
+
+        CorpusListing listing = documentsDirectory == null ? null : documentsDirectory.getListing();
+        long[] lastModified = new long[documents.length];
+        long version = 1125899906842597L;
+        for (int i = 0; i < documents.length; i++) {
+            int index = listing == null ? -1 : listing.indexOf(documents[i]);
+            long documentBytes;
+            if (index >= 0) {
+                lastModified[i] = listing.getLastModified()[index];
+                documentBytes = listing.getDocumentBytes()[index];
+            } else {
+                File file = new File(documents[i]);
+                lastModified[i] = file.lastModified();
+                documentBytes = file.length();
+            }
+            version = 31 * (31 * version + documentBytes) + lastModified[i];
+        }
+        invalidateModifiedDocuments(documents, lastModified, listing);
+        return new Key(terms, documents, version);
+    }
+
+    /**
+     * @param lastModified the modification time of each document, 0 for a document that does not exist
+     */
+    private synchronized void invalidateModifiedDocuments(String[] documents, long[] lastModified, CorpusListing listing) {
+        if (listing != null && listing != lastListing) {
+            lastListing = listing;
+            invalidateRemovedDocuments(listing);
+        }
+        for (int i = 0; i < documents.length; i++) {
+            if (lastModified[i] == 0) {
+                if (documentToLastModified.remove(documents[i]) != null) {
+                    invalidateDocument(documents[i]);
+                }
+                continue;
+            }
+            Long previous = documentToLastModified.put(documents[i], lastModified[i]);
+            if (previous != null && previous != lastModified[i]) {
+                invalidateDocument(documents[i]);
+            }
+        }
+    }
+
+    /**
+     * Drops the documents that are neither in the new listing nor anywhere else on disk
+     */
+    private void invalidateRemovedDocuments(CorpusListing listing) {
+        Iterator<String> documents = documentToLastModified.keySet().iterator();
+        while (documents.hasNext()) {
+            String document = documents.next();
+            if (listing.indexOf(document) < 0 && !new File(document).exists()) {
+                documents.remove();
+                invalidateDocument(document);
+            }
+        }
+    }
+
+    private void invalidateDocument(String document) {
+        Set<Key> keys = documentToKeys.remove(document);
+        if (keys == null) {
+            return;
+        }
+        for (Key key : keys) {
+            bytes -= entries.remove(key).bytes;
+            removeFromDocumentIndex(key);
+            invalidations.increment();
+        }
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<Key, CachedFrequencies>> leastRecentlyUsed = entries.entrySet().iterator();
+        while (bytes > maxBytes && leastRecentlyUsed.hasNext()) {
+            Map.Entry<Key, CachedFrequencies> entry = leastRecentlyUsed.next();
+            bytes -= entry.getValue().bytes;
+            leastRecentlyUsed.remove();
+            removeFromDocumentIndex(entry.getKey());
+            evictions.increment();
+        }
+    }
+
+    private void removeFromDocumentIndex(Key key) {
+        for (String document : key.documents) {
+            Set<Key> keys = documentToKeys.get(document);
+            // Already gone for the document being invalidated
+            if (keys != null && keys.remove(key) && keys.isEmpty()) {
+                documentToKeys.remove(document);
+            }
+        }
+    }
+
+    private static class Key {
+        private final String[] terms;
+        private final String[] documents;
+        private final long version;
+        private final int hashCode;
+
+        Key(String[] terms, String[] documents, long version) {
+            this.terms = terms;
+            this.documents = documents;
+            this.version = version;
+            this.hashCode = 31 * (31 * Arrays.hashCode(terms) + Arrays.hashCode(documents)) + Long.hashCode(version);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return version == key.version && Arrays.equals(terms, key.terms) && Arrays.equals(documents, key.documents);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    private static class CachedFrequencies {
+        private final String[] terms;
+        private final String[] documents;
+        // frequencies[document * terms.length + term]
+        private final double[] frequencies;
+        private final long bytes;
+
+        CachedFrequencies(Key key, List<String> taskTerms, Result result) {
+            this.terms = key.terms;
+            this.documents = key.documents;
+            this.frequencies = new double[documents.length * terms.length];
+
+            String[] taskTermForTerm = new String[terms.length];
+            for (String taskTerm : taskTerms) {
+                taskTermForTerm[Arrays.binarySearch(terms, Tokenizer.lowerCase(taskTerm))] = taskTerm;
+            }
+            Map<String, DocumentData> documentToDocumentData = result.getDocumentToDocumentData();
+            for (int i = 0; i < documents.length; i++) {
+                DocumentData documentData = documentToDocumentData.get(documents[i]);
+                for (int j = 0; j < terms.length; j++) {
+                    frequencies[i * terms.length + j] = documentData.getFrequency(taskTermForTerm[j]);
+                }
+            }
+
+            long size = ENTRY_OVERHEAD_BYTES + (long) Double.BYTES * frequencies.length;
+            for (String document : documents) {
+                size += STRING_OVERHEAD_BYTES + document.length();
+            }
+            for (String term : terms) {
+                size += STRING_OVERHEAD_BYTES + term.length();
+            }
+            this.bytes = size;
+        }
+
+        Result toResult(List<String> taskTerms) {
+            int[] termIndexes = new int[taskTerms.size()];
+            for (int i = 0; i < termIndexes.length; i++) {
+                termIndexes[i] = Arrays.binarySearch(terms, Tokenizer.lowerCase(taskTerms.get(i)));
+            }
+
+            Result result = new Result();
+            for (int i = 0; i < documents.length; i++) {
+                DocumentData documentData = new DocumentData();
+                for (int j = 0; j < termIndexes.length; j++) {
+                    documentData.putTermFrequency(taskTerms.get(j), frequencies[i * terms.length + termIndexes[j]]);
+                }
+                result.addDocumentData(documents[i], documentData);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,476 @@
+package distributed.system.tfidf.search;
+
+import distributed.system.Aggregator;
+import distributed.system.OnTaskCompletedCallback;
+import distributed.system.networking.MetricsSource;
+import distributed.system.networking.MetricsWriter;
+import distributed.system.networking.OnRequestCallback;
+import distributed.system.tfidf.model.DocumentData;
+import distributed.system.tfidf.model.DocumentScore;
+import distributed.system.tfidf.model.Result;
+import distributed.system.tfidf.model.SearchResult;
+import distributed.system.tfidf.model.Task;
+import distributed.system.zookeeper.cluster.management.ServiceMetadata;
+import distributed.system.zookeeper.cluster.management.ServiceRegistry;
+import org.apache.zookeeper.KeeperException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Answers search queries by splitting the documents across the live workers, sending each its share as a
+ * {@link Task} and ranking the merged results. How the documents are split is up to the {@link ShardScheduler}.
+ * <p>
+ * The request body is the query as UTF-8 text. The response has one line per matching document, best first,
+ * with the score and the document separated by a tab. If some shards were not answered before the deadline,
+ * the ranking covers the other documents only, and a {@code # missing} line follows for every document left out.
+ */
+public class SearchCoordinator implements OnRequestCallback, MetricsSource {
+    private static final String ENDPOINT = "/search";
+    public static final int DEFAULT_TOP_RESULTS = 10;
+    public static final Duration DEFAULT_DEADLINE = Duration.ofSeconds(5);
+
+    private final Supplier<List<ServiceMetadata>> workerMetadata;
+    private final Aggregator aggregator;
+    private final DocumentsDirectory documentsDirectory;
+    private final int topResults;
+    private final Duration deadline;
+    private final ShardScheduler shardScheduler;
+    private final DocumentFrequencyCache documentFrequencyCache = new DocumentFrequencyCache();
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder failedSearches = new LongAdder();
+    private final LongAdder partialSearches = new LongAdder();
+    private final LongAdder shardRequests = new LongAdder();
+    private final LongAdder missingShards = new LongAdder();
+    private final LongAdder skippedSaturatedWorkers = new LongAdder();
+
+    public SearchCoordinator(ServiceRegistry workersServiceRegistry, String documentsDirectory) {
+        this(workersServiceRegistry, new Aggregator(), documentsDirectory, DEFAULT_TOP_RESULTS, DEFAULT_DEADLINE,
+                new ShardScheduler(ShardScheduler.Mode.BALANCED));
+    }
+
+    /**
+     * The shard scheduler is given the capacity and load the workers publish in the registry
+     */
+    public SearchCoordinator(ServiceRegistry workersServiceRegistry, Aggregator aggregator, String documentsDirectory,
+                             int topResults, Duration deadline, ShardScheduler shardScheduler) {
+        this(workersServiceRegistry, aggregator, new DocumentsDirectory(documentsDirectory), topResults, deadline,
+                shardScheduler);
+    }
+
+    /**
+     * @param documentsDirectory may be shared with the {@link ResultCache} of the worker on the same node, so the
+     *                           documents are listed once for both
+     */
+    public SearchCoordinator(ServiceRegistry workersServiceRegistry, Aggregator aggregator,
+                             DocumentsDirectory documentsDirectory, int topResults, Duration deadline,
+                             ShardScheduler shardScheduler) {
+        this(aggregator, documentsDirectory, topResults, deadline, shardScheduler, () -> getWorkers(workersServiceRegistry));
+    }
+
+    /**
+     * @param workerAddresses the task endpoints of the live workers
+     * @param deadline        how long a search waits for the workers before answering with the shards it has
+     */
+    public SearchCoordinator(Supplier<List<String>> workerAddresses, Aggregator aggregator, String documentsDirectory,
+                             int topResults, Duration deadline, ShardScheduler shardScheduler) {
+        this(aggregator, new DocumentsDirectory(documentsDirectory), topResults, deadline, shardScheduler,
+                () -> workerAddresses.get().stream().map(ServiceMetadata::of).collect(Collectors.toList()));
+    }
+
+    private SearchCoordinator(Aggregator aggregator, DocumentsDirectory documentsDirectory, int topResults,
+                              Duration deadline, ShardScheduler shardScheduler,
+                              Supplier<List<ServiceMetadata>> workerMetadata) {
+        this.workerMetadata = workerMetadata;
+        this.aggregator = aggregator;
+        this.documentsDirectory = documentsDirectory;
+        this.topResults = topResults;
+        this.deadline = deadline;
+        this.shardScheduler = shardScheduler;
+    }
+
+    @Override
+    public byte[] handleRequest(byte[] requestPayload) {
+        String query = new String(requestPayload, StandardCharsets.UTF_8);
+        SearchResult searchResult = search(query);
+        StringBuilder response = new StringBuilder();
+        for (DocumentScore documentScore : searchResult.getTopDocuments()) {
+            response.append(documentScore.getScore()).append('\t').append(documentScore.getDocument()).append('\n');
+        }
+        for (List<String> shard : searchResult.getMissingShards()) {
+            for (String document : shard) {
+                response.append("# missing\t").append(document).append('\n');
+            }
+        }
+        return response.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String getEndpoint() {
+        return ENDPOINT;
+    }
+
+    public SearchResult search(String query) {
+        return search(query, deadline);
+    }
+
+    /**
+     * @return the best matching documents, or no documents if there are no workers. Shards whose workers all
+     * failed or did not answer within the deadline are reported as missing.
+     */
+    public SearchResult search(String query, Duration deadline) {
+        long deadlineNanos = System.nanoTime() + deadline.toNanos();
+        searches.increment();
+        List<String> terms = TFIDF.getWordsFromLine(query);
+        List<ServiceMetadata> workerMetadata = this.workerMetadata.get();
+        List<String> workers = getAdmittingWorkers(workerMetadata);
+        CorpusListing corpus = documentsDirectory.getListing();
+        List<String> documents = corpus.getDocuments();
+        if (terms.isEmpty() || documents.isEmpty()) {
+            return SearchResult.empty();
+        }
+        if (workers.isEmpty()) {
+            System.out.println("No search workers are available");
+            failedSearches.increment();
+            return SearchResult.empty();
+        }
+        // The corpus is fingerprinted as it is listed, so cached document frequencies do not outlive a change to it
+        // by more than the refresh interval of the listing
+        long corpusVersion = corpus.getVersion();
+        long[] documentBytes = corpus.getDocumentBytes();
+        shardScheduler.updateWorkers(workerMetadata);
+
+        List<List<String>> shards = new ArrayList<>();
+        MergedResults mergedResults;
+        CompletableFuture<?> allMerged;
+        if (shardScheduler.getMode() == ShardScheduler.Mode.WORK_STEALING) {
+            shards = shardScheduler.splitIntoBatches(documents, documentBytes, workers.size());
+            System.out.println(String.format("Searching %d documents in %d batches on %d workers",
+                    documents.size(), shards.size(), workers.size()));
+            mergedResults = new MergedResults(shards.size());
+            allMerged = new WorkStealingSearch(terms, shards, documents, documentBytes, mergedResults, deadlineNanos)
+                    .start(workers);
+        } else {
+            List<List<String>> assignedDocuments = shardScheduler.assign(documents, documentBytes, workers);
+            List<CompletableFuture<?>> merged = new ArrayList<>();
+            mergedResults = new MergedResults(workers.size());
+            for (int i = 0; i < workers.size(); i++) {
+                if (assignedDocuments.get(i).isEmpty()) {
+                    continue;
+                }
+                int shard = shards.size();
+                shards.add(assignedDocuments.get(i));
+                Task task = new Task(terms, assignedDocuments.get(i));
+                shardRequests.increment();
+                merged.add(aggregator.sendTask(getReplicas(workers, i), task, Duration.ofNanos(deadlineNanos - System.nanoTime()),
+                                recordThroughput(getBytes(assignedDocuments.get(i), documents, documentBytes)))
+                        .thenAccept(result -> mergedResults.merge(shard, result)));
+            }
+            System.out.println(String.format("Searching %d documents on %d workers", documents.size(), shards.size()));
+            allMerged = CompletableFuture.allOf(merged.toArray(new CompletableFuture<?>[0]));
+        }
+
+        try {
+            allMerged.get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            System.out.println("Not every shard was answered: " + e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        Map<String, DocumentData> documentToDocumentData = mergedResults.close();
+        List<List<String>> missing = new ArrayList<>();
+        for (int i = 0; i < shards.size(); i++) {
+            if (!mergedResults.isMerged(i)) {
+                missing.add(shards.get(i));
+            }
+        }
+        if (missing.isEmpty()) {
+            return new SearchResult(TFIDF.getTopDocuments(terms, documentToDocumentData, topResults,
+                    Double.NEGATIVE_INFINITY, documentFrequencyCache, corpusVersion), missing);
+        }
+
+        // Document frequencies of part of the corpus must not be cached under the version of all of it
+        partialSearches.increment();
+        missingShards.add(missing.size());
+        return new SearchResult(TFIDF.getTopDocuments(terms, documentToDocumentData, topResults), missing);
+    }
+
+    /**
+     * @return the workers that are not turning tasks away, or all of them if every worker is. A saturated worker
+     * would answer its share with 503 and the share would only be searched by the next replica after that.
+     */
+    private List<String> getAdmittingWorkers(List<ServiceMetadata> workerMetadata) {
+        List<String> workers = workerMetadata.stream()
+                .filter(metadata -> !metadata.isSaturated())
+                .map(ServiceMetadata::getAddress)
+                .collect(Collectors.toList());
+        if (workers.isEmpty()) {
+            return workerMetadata.stream().map(ServiceMetadata::getAddress).collect(Collectors.toList());
+        }
+        skippedSaturatedWorkers.add(workerMetadata.size() - workers.size());
+        return workers;
+    }
+
+    @Override
+    public void writeMetrics(MetricsWriter writer) {
+        writer.counter("search_coordinator_searches_total", "Search queries received", searches.sum());
+        writer.counter("search_coordinator_failed_searches_total", "Searches without any worker to send them to",
+                failedSearches.sum());
+        writer.counter("search_coordinator_partial_searches_total", "Searches answered with shards missing",
+                partialSearches.sum());
+        writer.counter("search_coordinator_shard_requests_total", "Shards sent to workers", shardRequests.sum());
+        writer.counter("search_coordinator_missing_shards_total", "Shards without an answer by the deadline",
+                missingShards.sum());
+        writer.counter("search_coordinator_hedged_requests_total", "Shards sent to a second worker because the first was slow",
+                aggregator.getHedgedRequestCount());
+        writer.counter("search_coordinator_failover_requests_total", "Shards sent to another worker because one failed",
+                aggregator.getFailoverRequestCount());
+        writer.counter("search_coordinator_backup_answers_total", "Shards answered by a worker other than the first",
+                aggregator.getBackupAnswerCount());
+        writer.gauge("search_coordinator_hedge_delay_seconds", "The p95 shard latency after which a shard is hedged",
+                aggregator.getTaskLatency().getQuantileNanos(0.95) / 1e9);
+        writer.family("search_coordinator_worker_bytes_per_second", "gauge", "Moving average of the document bytes a worker searches per second");
+        for (Map.Entry<String, Double> workerEntry : shardScheduler.getBytesPerSecondByWorker().entrySet()) {
+            writer.sample("search_coordinator_worker_bytes_per_second", "worker", workerEntry.getKey(), workerEntry.getValue());
+        }
+        Map<String, ServiceMetadata> metadataByWorker = shardScheduler.getMetadataByWorker();
+        writer.family("search_coordinator_worker_capacity", "gauge", "Tasks a worker can work on at the same time, as it published");
+        for (ServiceMetadata metadata : metadataByWorker.values()) {
+            writer.sample("search_coordinator_worker_capacity", "worker", metadata.getAddress(), metadata.getCapacity());
+        }
+        writer.family("search_coordinator_worker_load", "gauge", "Share of its capacity a worker last published as in use");
+        for (ServiceMetadata metadata : metadataByWorker.values()) {
+            writer.sample("search_coordinator_worker_load", "worker", metadata.getAddress(), metadata.getLoad());
+        }
+        writer.family("search_coordinator_worker_saturated", "gauge", "1 if a worker last published that it turns tasks away");
+        for (ServiceMetadata metadata : metadataByWorker.values()) {
+            writer.sample("search_coordinator_worker_saturated", "worker", metadata.getAddress(), metadata.isSaturated() ? 1 : 0);
+        }
+        writer.counter("search_coordinator_skipped_saturated_workers_total",
+                "Times a search left out a worker because it was saturated", skippedSaturatedWorkers.sum());
+        writer.counter("search_coordinator_document_frequency_cache_hits_total", "Document frequencies found in the cache",
+                documentFrequencyCache.getHitCount());
+        writer.counter("search_coordinator_document_frequency_cache_misses_total", "Document frequencies counted",
+                documentFrequencyCache.getMissCount());
+        writer.counter("search_coordinator_document_frequency_cache_invalidations_total",
+                "Times the cache was cleared for a new corpus version", documentFrequencyCache.getInvalidationCount());
+        writer.gauge("search_coordinator_document_frequency_cache_terms", "Terms in the cache", documentFrequencyCache.size());
+    }
+
+    private static List<ServiceMetadata> getWorkers(ServiceRegistry workersServiceRegistry) {
+        try {
+            return workersServiceRegistry.getAllServiceMetadata();
+        } catch (KeeperException | InterruptedException e) {
+            e.printStackTrace();
+            return Collections.emptyList();
+        }
+    }
+
+    private static long getBytes(List<String> shard, List<String> documents, long[] documentBytes) {
+        long bytes = 0;
+        for (String document : shard) {
+            // The documents are sorted, so a shard's documents can be found by binary search
+            bytes += documentBytes[Collections.binarySearch(documents, document)];
+        }
+        return bytes;
+    }
+
+    private OnTaskCompletedCallback recordThroughput(long shardBytes) {
+        return (worker, elapsedNanos, succeeded) -> {
+            if (succeeded) {
+                shardScheduler.recordAnswer(worker, shardBytes, elapsedNanos);
+            } else {
+                shardScheduler.recordFailure(worker);
+            }
+        };
+    }
+
+    /**
+     * Every worker can read every document, so any of them can stand in for another. The worker assigned
+     * to the shard comes first, followed by the others in turn.
+     */
+    private static List<String> getReplicas(List<String> workers, int shard) {
+        List<String> replicas = new ArrayList<>(workers.size());
+        for (int i = 0; i < workers.size(); i++) {
+            replicas.add(workers.get((shard + i) % workers.size()));
+        }
+        return replicas;
+    }
+
+    /**
+     * Merges shard results as they arrive, until the search stops waiting for them
+     */
+    private static class MergedResults {
+        private final Map<String, DocumentData> documentToDocumentData = new HashMap<>();
+        private final boolean[] mergedShards;
+        private boolean closed;
+
+        MergedResults(int shards) {
+            this.mergedShards = new boolean[shards];
+        }
+
+        private int mergedCount;
+
+        /**
+         * @return true if every shard has been merged
+         */
+        synchronized boolean merge(int shard, Result result) {
+            if (!closed && !mergedShards[shard]) {
+                documentToDocumentData.putAll(result.getDocumentToDocumentData());
+                mergedShards[shard] = true;
+                mergedCount++;
+            }
+            return mergedCount == mergedShards.length;
+        }
+
+        /**
+         * @return the merged results; shards arriving afterwards are ignored
+         */
+        synchronized Map<String, DocumentData> close() {
+            closed = true;
+            return documentToDocumentData;
+        }
+
+        synchronized boolean isMerged(int shard) {
+            return mergedShards[shard];
+        }
+    }
+
+    /**
+     * Hands the batches out one at a time, each worker getting the next as soon as it answers, so faster
+     * workers search more of them. Once every batch is handed out, an idle worker also takes a batch still in
+     * flight on a slower one, and the first answer wins. A worker that fails gets no more batches and its batch
+     * is handed to another. A worker with nothing left to take waits until the search is done or its deadline
+     * passes, since a worker failing later puts its batch back for the waiting ones.
+     */
+    private class WorkStealingSearch {
+        private final List<String> terms;
+        private final List<List<String>> batches;
+        private final long[] batchBytes;
+        private final boolean[] stolenBatches;
+        private final MergedResults mergedResults;
+        private final long deadlineNanos;
+        private final Queue<Integer> pendingBatches = new ConcurrentLinkedQueue<>();
+        // Workers with nothing to take, guarded by this
+        private final Queue<String> idleWorkers = new ArrayDeque<>();
+        private final AtomicInteger activeWorkers = new AtomicInteger();
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        WorkStealingSearch(List<String> terms, List<List<String>> batches, List<String> documents, long[] documentBytes,
+                           MergedResults mergedResults, long deadlineNanos) {
+            this.terms = terms;
+            this.batches = batches;
+            this.batchBytes = new long[batches.size()];
+            this.stolenBatches = new boolean[batches.size()];
+            this.mergedResults = mergedResults;
+            this.deadlineNanos = deadlineNanos;
+            for (int i = 0; i < batches.size(); i++) {
+                batchBytes[i] = getBytes(batches.get(i), documents, documentBytes);
+                pendingBatches.add(i);
+            }
+        }
+
+        /**
+         * @return completes when every batch is merged, or when no worker is left to search the rest
+         */
+        CompletableFuture<Void> start(List<String> workers) {
+            activeWorkers.set(workers.size());
+            for (String worker : workers) {
+                sendNextBatch(worker);
+            }
+            return done;
+        }
+
+        private void sendNextBatch(String worker) {
+            long remainingNanos = deadlineNanos - System.nanoTime();
+            if (done.isDone() || remainingNanos <= 0) {
+                workerFinished();
+                return;
+            }
+            Integer batch;
+            synchronized (this) {
+                // Checked under the lock a failing worker requeues its batch under, so the batch cannot slip in
+                // between this worker finding nothing and it starting to wait
+                batch = nextBatch();
+                if (batch == null) {
+                    idleWorkers.add(worker);
+                    return;
+                }
+            }
+
+            shardRequests.increment();
+            Task task = new Task(terms, batches.get(batch));
+            aggregator.sendTask(List.of(worker), task, Duration.ofNanos(remainingNanos), recordThroughput(batchBytes[batch]))
+                    .whenComplete((result, failure) -> {
+                        if (failure == null) {
+                            if (mergedResults.merge(batch, result)) {
+                                done.complete(null);
+                            }
+                            sendNextBatch(worker);
+                        } else {
+                            String idleWorker = null;
+                            if (!mergedResults.isMerged(batch)) {
+                                synchronized (this) {
+                                    pendingBatches.add(batch);
+                                    idleWorker = idleWorkers.poll();
+                                }
+                            }
+                            workerFinished();
+                            if (idleWorker != null) {
+                                sendNextBatch(idleWorker);
+                            }
+                        }
+                    });
+        }
+
+        private Integer nextBatch() {
+            Integer batch;
+            while ((batch = pendingBatches.poll()) != null) {
+                if (!mergedResults.isMerged(batch)) {
+                    return batch;
+                }
+            }
+            return stealBatchInFlight();
+        }
+
+        /**
+         * @return a batch still being searched by another worker that no one has stolen yet, or null
+         */
+        private synchronized Integer stealBatchInFlight() {
+            for (int i = 0; i < batches.size(); i++) {
+                if (!stolenBatches[i] && !mergedResults.isMerged(i)) {
+                    stolenBatches[i] = true;
+                    return i;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Counts out a worker that failed or is past the deadline. A waiting worker is still counted, so the
+         * search is done without every batch merged only once no worker is left to search them.
+         */
+        private void workerFinished() {
+            if (activeWorkers.decrementAndGet() == 0) {
+                done.complete(null);
+            }
+        }
+    }
+}
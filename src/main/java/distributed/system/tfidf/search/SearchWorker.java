@@ -24,53 +24,253 @@
 
 package distributed.system.tfidf.search;
 
-import distributed.system.networking.OnRequestCallback;
+import distributed.system.networking.MetricsSource;
+import distributed.system.networking.MetricsWriter;
+import distributed.system.networking.StreamingRequestCallback;
+import distributed.system.tfidf.index.DocumentIndex;
+import distributed.system.tfidf.index.IndexedDocument;
+import distributed.system.tfidf.index.Postings;
+import distributed.system.tfidf.model.BinaryCodec;
 import distributed.system.tfidf.model.DocumentData;
 import distributed.system.tfidf.model.Result;
 import distributed.system.tfidf.model.SerializationUtils;
 import distributed.system.tfidf.model.Task;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.util.Collections;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
 
-public class SearchWorker implements OnRequestCallback {
+public class SearchWorker implements StreamingRequestCallback, MetricsSource {
     private static final String ENDPOINT = "/task";
+    private final Supplier<DocumentIndex> documentIndex;
+    private final int parallelism;
+    private final ExecutorService documentExecutor;
+    private final ResultCache resultCache;
+    private final LongAdder busyNanos = new LongAdder();
+
+    public SearchWorker() {
+        this(null);
+    }
+
+    public SearchWorker(DocumentIndex documentIndex) {
+        this(documentIndex, 1);
+    }
+
+    /**
+     * @param parallelism the most documents of one task processed at the same time. Tasks share a pool of
+     *                    {@code parallelism - 1} threads and the request thread joins in, so however many requests
+     *                    are in flight, at most that many pool threads process documents on top of the request threads.
+     */
+    public SearchWorker(DocumentIndex documentIndex, int parallelism) {
+        this(documentIndex, parallelism, null);
+    }
+
+    /**
+     * @param resultCache caches the results of repeated tasks, or null to compute every task
+     */
+    public SearchWorker(DocumentIndex documentIndex, int parallelism, ResultCache resultCache) {
+        this(() -> documentIndex, parallelism, resultCache);
+    }
+
+    /**
+     * @param documentIndex gives the index to answer each task from, or null to read every document from disk. It is
+     *                      asked once per task, so a new generation can be swapped in between tasks.
+     */
+    public SearchWorker(Supplier<DocumentIndex> documentIndex, int parallelism, ResultCache resultCache) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        this.documentIndex = documentIndex;
+        this.parallelism = parallelism;
+        this.resultCache = resultCache;
+        this.documentExecutor = parallelism == 1 ? null : Executors.newFixedThreadPool(parallelism - 1, runnable -> {
+            Thread thread = new Thread(runnable, "search-worker-documents");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
 
     @Override
     public byte[] handleRequest(byte[] requestPayload) {
-        Task task = (Task) SerializationUtils.deserialize(requestPayload);
+        return handleRequest(requestPayload, SerializationUtils.CONTENT_TYPE);
+    }
+
+    /**
+     * Answers in the binary format when the request is sent as {@link BinaryCodec#CONTENT_TYPE},
+     * and with Java serialization otherwise
+     *
+     * @throws UncheckedIOException if the payload is not a task
+     */
+    @Override
+    public byte[] handleRequest(byte[] requestPayload, String contentType) {
+        if (BinaryCodec.CONTENT_TYPE.equals(contentType)) {
+            Task task = BinaryCodec.decodeTask(requestPayload);
+            return BinaryCodec.encodeResult(createResult(task));
+        }
+        if (!(SerializationUtils.deserialize(requestPayload) instanceof Task task)) {
+            throw new UncheckedIOException(new IOException("The request is not a serialized task"));
+        }
         Result result = createResult(task);
         return SerializationUtils.serialize(result);
     }
 
+    /**
+     * Same as {@link #handleRequest(byte[], String)}, but decodes the task from the request stream and encodes the
+     * result straight into the response, so the serialized payloads are never held in memory
+     *
+     * @throws UncheckedIOException if the payload is not a task
+     */
+    @Override
+    public void handleRequest(InputStream requestBody, OutputStream responseBody, String contentType) throws IOException {
+        BufferedInputStream input = new BufferedInputStream(requestBody);
+        BufferedOutputStream output = new BufferedOutputStream(responseBody);
+        if (BinaryCodec.CONTENT_TYPE.equals(contentType)) {
+            Task task = BinaryCodec.readTask(input);
+            BinaryCodec.writeResult(createResult(task), output);
+            return;
+        }
+        if (!(SerializationUtils.readObject(input) instanceof Task task)) {
+            throw new UncheckedIOException(new IOException("The request is not a serialized task"));
+        }
+        SerializationUtils.writeObject(createResult(task), output);
+    }
+
+    /**
+     * @return the time threads spent on the documents of tasks so far, added up over the threads, so a task spread
+     * over {@code parallelism} threads counts that many times its duration
+     */
+    public long getBusyNanos() {
+        return busyNanos.sum();
+    }
+
+    @Override
+    public void writeMetrics(MetricsWriter writer) {
+        writer.counter("search_worker_busy_seconds_total", "Time threads spent on documents, added up over threads",
+                busyNanos.sum() / 1e9);
+        if (resultCache == null) {
+            return;
+        }
+        writer.counter("search_worker_result_cache_hits_total", "Tasks answered from the result cache", resultCache.getHitCount());
+        writer.counter("search_worker_result_cache_misses_total", "Tasks computed because they were not cached", resultCache.getMissCount());
+        writer.counter("search_worker_result_cache_evictions_total", "Results evicted to stay within the byte budget",
+                resultCache.getEvictionCount());
+        writer.counter("search_worker_result_cache_invalidations_total", "Results dropped because a document changed",
+                resultCache.getInvalidationCount());
+        writer.gauge("search_worker_result_cache_entries", "Results in the cache", resultCache.size());
+        writer.gauge("search_worker_result_cache_bytes", "Estimated size of the cached results", resultCache.getBytes());
+    }
+
     private Result createResult(Task task) {
         List<String> documents = task.getDocuments();
         System.out.println(String.format("Received %d documents to process", documents.size()));
 
-        Result result = new Result();
+        if (resultCache != null) {
+            return resultCache.getOrCompute(task, this::computeResult);
+        }
+        return computeResult(task);
+    }
+
+    private Result computeResult(Task task) {
+        List<String> documents = task.getDocuments();
+        List<String> terms = task.getSearchTerms();
+        // Document ids differ between generations, so the whole task is answered from the same one
+        DocumentIndex documentIndex = this.documentIndex.get();
+        Postings[] termPostings = documentIndex == null ? null : getTermPostings(documentIndex, terms);
+        DocumentData[] documentsData = new DocumentData[documents.size()];
+
+        // Documents are handed out one at a time, so a few large books do not leave the other threads idle
+        AtomicInteger nextDocument = new AtomicInteger();
+        Runnable processDocuments = () -> {
+            long startNanos = System.nanoTime();
+            int i;
+            while ((i = nextDocument.getAndIncrement()) < documents.size()) {
+                documentsData[i] = createDocumentData(documentIndex, documents.get(i), terms, termPostings);
+            }
+            busyNanos.add(System.nanoTime() - startNanos);
+        };
+
+        int helpers = Math.min(parallelism, documents.size()) - 1;
+        List<CompletableFuture<Void>> helperFutures = new ArrayList<>(Math.max(helpers, 0));
+        for (int i = 0; i < helpers; i++) {
+            helperFutures.add(CompletableFuture.runAsync(processDocuments, documentExecutor));
+        }
+        processDocuments.run();
+        helperFutures.forEach(CompletableFuture::join);
 
-        for (String document : documents) {
-            List<String> words = parseWordsFromDocument(document);
-            DocumentData documentData = TFIDF.createDocumentData(words, task.getSearchTerms());
-            result.addDocumentData(document, documentData);
+        Result result = new Result();
+        for (int i = 0; i < documents.size(); i++) {
+            result.addDocumentData(documents.get(i), documentsData[i]);
         }
         return result;
     }
 
-    private List<String> parseWordsFromDocument(String document) {
+    private DocumentData createDocumentData(DocumentIndex documentIndex, String document, List<String> terms,
+                                            Postings[] termPostings) {
+        DocumentData documentData = null;
+        if (documentIndex != null) {
+            documentData = createDocumentDataFromIndex(documentIndex, document, terms, termPostings);
+        }
+        if (documentData == null) {
+            TermCounter termCounter = countTermsInDocument(document, terms);
+            documentData = TFIDF.createDocumentData(termCounter, terms);
+        }
+        return documentData;
+    }
+
+    private static Postings[] getTermPostings(DocumentIndex documentIndex, List<String> terms) {
+        Postings[] termPostings = new Postings[terms.size()];
+        for (int i = 0; i < terms.size(); i++) {
+            termPostings[i] = documentIndex.getPostings(Tokenizer.lowerCase(terms.get(i)));
+        }
+        return termPostings;
+    }
+
+    /**
+     * @return the term frequencies from the index, or null if the document is not indexed or was modified since
+     */
+    private static DocumentData createDocumentDataFromIndex(DocumentIndex documentIndex, String document, List<String> terms,
+                                                            Postings[] termPostings) {
+        int documentId = documentIndex.getDocumentId(document);
+        if (documentId == DocumentIndex.NOT_INDEXED) {
+            return null;
+        }
+        IndexedDocument indexedDocument = documentIndex.getDocument(documentId);
+        if (indexedDocument.getLastModified() != new File(document).lastModified()) {
+            return null;
+        }
+
+        DocumentData documentData = new DocumentData();
+        for (int i = 0; i < terms.size(); i++) {
+            double termFreq = (double) termPostings[i].getTermCount(documentId) / indexedDocument.getLength();
+            documentData.putTermFrequency(terms.get(i), termFreq);
+        }
+        return documentData;
+    }
+
+    private TermCounter countTermsInDocument(String document, List<String> terms) {
+        TermCounter termCounter = new TermCounter(terms);
         try {
-            FileReader fileReader = new FileReader(document);
-            BufferedReader bufferedReader = new BufferedReader(fileReader);
-            List<String> lines = bufferedReader.lines().collect(Collectors.toList());
-            List<String> words = TFIDF.getWordsFromDocument(lines);
-            return words;
+            new DocumentScanner().scan(document, termCounter);
         } catch (FileNotFoundException e) {
-            return Collections.emptyList();
+            return new TermCounter(terms);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return new TermCounter(terms);
         }
+        return termCounter;
     }
 
     @Override
@@ -0,0 +1,235 @@
+package distributed.system.tfidf.search;
+
+import distributed.system.zookeeper.cluster.management.ServiceMetadata;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decides which documents each worker searches. Keeps an exponentially weighted moving average of the bytes per
+ * second every worker has processed, so faster workers are given more of the corpus.
+ * <p>
+ * With the {@link ServiceMetadata} the workers publish, a worker that has not answered yet is assumed to be as fast
+ * per unit of capacity as the others, rather than as fast as the average worker, slowed down by the load it reported.
+ * The load does not change the share of a worker with a throughput estimate, which was measured under that load, part
+ * of it caused by this coordinator's own shards.
+ */
+public class ShardScheduler {
+    public enum Mode {
+        /**
+         * Contiguous runs of the same number of documents for every worker
+         */
+        EVEN,
+        /**
+         * Documents spread so all workers are expected to finish at the same time, given their throughput
+         */
+        BALANCED,
+        /**
+         * Small batches handed to whichever worker is free, see {@link #splitIntoBatches}
+         */
+        WORK_STEALING
+    }
+
+    private static final double SMOOTHING = 0.3;
+    // A failed or timed out worker keeps this share of its throughput estimate
+    private static final double FAILURE_PENALTY = 0.5;
+    // Every worker is assumed to be at least this fraction as fast as the average. A worker given very few bytes
+    // looks slow because of the fixed cost of a request, and would otherwise be starved of the work that lets
+    // its estimate recover.
+    private static final double MIN_SHARE_OF_AVERAGE = 0.1;
+    private static final int BATCHES_PER_WORKER = 4;
+    // A worker at or above this load still gets the share of a worker with this much of its capacity free
+    private static final double MAX_LOAD = 0.9;
+
+    private final Mode mode;
+    private final Map<String, Double> workerToBytesPerSecond = new ConcurrentHashMap<>();
+    private final Map<String, ServiceMetadata> workerToMetadata = new ConcurrentHashMap<>();
+
+    public ShardScheduler(Mode mode) {
+        this.mode = mode;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * @param documentBytes the size of every document, in the same order
+     * @return the documents of every worker, in the same order as {@code workers}; some may be empty
+     */
+    public List<List<String>> assign(List<String> documents, long[] documentBytes, List<String> workers) {
+        if (mode == Mode.EVEN) {
+            return splitEvenly(documents, workers.size());
+        }
+
+        // Longest processing time first: the biggest documents are placed while there is still room to balance them
+        Integer[] bySizeDescending = sortBySizeDescending(documentBytes);
+        double[] bytesPerSecond = getBytesPerSecond(workers);
+        long[] assignedBytes = new long[workers.size()];
+        List<List<String>> shards = new ArrayList<>(workers.size());
+        for (int i = 0; i < workers.size(); i++) {
+            shards.add(new ArrayList<>());
+        }
+
+        for (int document : bySizeDescending) {
+            long bytes = Math.max(1, documentBytes[document]);
+            int earliestWorker = 0;
+            double earliestFinish = Double.MAX_VALUE;
+            for (int worker = 0; worker < workers.size(); worker++) {
+                double finish = (assignedBytes[worker] + bytes) / bytesPerSecond[worker];
+                if (finish < earliestFinish) {
+                    earliestFinish = finish;
+                    earliestWorker = worker;
+                }
+            }
+            assignedBytes[earliestWorker] += bytes;
+            shards.get(earliestWorker).add(documents.get(document));
+        }
+        return shards;
+    }
+
+    /**
+     * Splits the documents into about {@value #BATCHES_PER_WORKER} batches per worker of similar size, biggest
+     * documents first, so the batches handed out last are the small ones that even out the finish times
+     */
+    public List<List<String>> splitIntoBatches(List<String> documents, long[] documentBytes, int workers) {
+        long totalBytes = 0;
+        for (long bytes : documentBytes) {
+            totalBytes += Math.max(1, bytes);
+        }
+        long batchBytes = Math.max(1, totalBytes / ((long) workers * BATCHES_PER_WORKER));
+
+        List<List<String>> batches = new ArrayList<>();
+        List<String> batch = new ArrayList<>();
+        long bytesInBatch = 0;
+        for (int document : sortBySizeDescending(documentBytes)) {
+            batch.add(documents.get(document));
+            bytesInBatch += Math.max(1, documentBytes[document]);
+            if (bytesInBatch >= batchBytes) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+                bytesInBatch = 0;
+            }
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    public void recordAnswer(String worker, long bytes, long elapsedNanos) {
+        double bytesPerSecond = Math.max(1, bytes) * 1e9 / Math.max(1, elapsedNanos);
+        workerToBytesPerSecond.merge(worker, bytesPerSecond,
+                (previous, observed) -> previous + SMOOTHING * (observed - previous));
+    }
+
+    public void recordFailure(String worker) {
+        workerToBytesPerSecond.computeIfPresent(worker, (key, previous) -> previous * FAILURE_PENALTY);
+    }
+
+    /**
+     * Forgets the workers that have left
+     */
+    public void retainWorkers(Collection<String> workers) {
+        workerToBytesPerSecond.keySet().retainAll(workers);
+        workerToMetadata.keySet().retainAll(workers);
+    }
+
+    /**
+     * Takes in the latest capacity and load of the live workers, and forgets the workers that have left
+     */
+    public void updateWorkers(List<ServiceMetadata> workers) {
+        List<String> addresses = new ArrayList<>(workers.size());
+        for (ServiceMetadata worker : workers) {
+            workerToMetadata.put(worker.getAddress(), worker);
+            addresses.add(worker.getAddress());
+        }
+        retainWorkers(addresses);
+    }
+
+    public Map<String, Double> getBytesPerSecondByWorker() {
+        return Collections.unmodifiableMap(new TreeMap<>(workerToBytesPerSecond));
+    }
+
+    public Map<String, ServiceMetadata> getMetadataByWorker() {
+        return Collections.unmodifiableMap(new TreeMap<>(workerToMetadata));
+    }
+
+    /**
+     * @return the throughput estimate of the worker, or 0 if it has not answered yet
+     */
+    public double getBytesPerSecond(String worker) {
+        return workerToBytesPerSecond.getOrDefault(worker, 0.0);
+    }
+
+    /**
+     * Workers without an estimate yet are assumed to be as fast per unit of capacity as the average of the others,
+     * slowed down by their load
+     */
+    private double[] getBytesPerSecond(List<String> workers) {
+        double[] bytesPerSecond = new double[workers.size()];
+        int[] capacity = new int[workers.size()];
+        double knownTotal = 0;
+        long knownCapacity = 0;
+        for (int i = 0; i < workers.size(); i++) {
+            bytesPerSecond[i] = getBytesPerSecond(workers.get(i));
+            capacity[i] = getMetadata(workers.get(i)).getCapacity();
+            if (bytesPerSecond[i] > 0) {
+                knownTotal += bytesPerSecond[i];
+                knownCapacity += capacity[i];
+            }
+        }
+        double averagePerCapacity = knownCapacity == 0 ? 1 : knownTotal / knownCapacity;
+        double average = 0;
+        for (int i = 0; i < bytesPerSecond.length; i++) {
+            if (bytesPerSecond[i] == 0) {
+                bytesPerSecond[i] = averagePerCapacity * capacity[i]
+                        * (1 - Math.min(MAX_LOAD, getMetadata(workers.get(i)).getLoad()));
+            }
+            average += bytesPerSecond[i] / bytesPerSecond.length;
+        }
+        for (int i = 0; i < bytesPerSecond.length; i++) {
+            bytesPerSecond[i] = Math.max(bytesPerSecond[i], average * MIN_SHARE_OF_AVERAGE);
+        }
+        return bytesPerSecond;
+    }
+
+    private ServiceMetadata getMetadata(String worker) {
+        ServiceMetadata metadata = workerToMetadata.get(worker);
+        return metadata == null ? ServiceMetadata.of(worker) : metadata;
+    }
+
+    private static Integer[] sortBySizeDescending(long[] documentBytes) {
+        Integer[] documents = new Integer[documentBytes.length];
+        for (int i = 0; i < documents.length; i++) {
+            documents[i] = i;
+        }
+        Arrays.sort(documents, Comparator.comparingLong((Integer document) -> documentBytes[document]).reversed());
+        return documents;
+    }
+
+    /**
+     * Splits the documents into one contiguous shard per worker, at most one shard per document
+     */
+    private static List<List<String>> splitEvenly(List<String> documents, int numberOfWorkers) {
+        int numberOfShards = Math.min(numberOfWorkers, documents.size());
+        List<List<String>> shards = new ArrayList<>(numberOfWorkers);
+        int start = 0;
+        for (int i = 0; i < numberOfShards; i++) {
+            int end = start + (documents.size() - start) / (numberOfShards - i);
+            shards.add(documents.subList(start, end));
+            start = end;
+        }
+        while (shards.size() < numberOfWorkers) {
+            shards.add(List.of());
+        }
+        return shards;
+    }
+}
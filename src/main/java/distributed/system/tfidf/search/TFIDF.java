@@ -25,28 +25,125 @@
 package distributed.system.tfidf.search;
 
 import distributed.system.tfidf.model.DocumentData;
+import distributed.system.tfidf.model.DocumentScore;
 
 import java.util.*;
 
 public class TFIDF {
 
+    /**
+     * @return the share of the words equal to the term, ignoring case as {@link Tokenizer#foldCase} does
+     */
     public static double calculateTermFrequency(List<String> words, String term) {
-        long count = 0;
+        long count = countTerm(words, Tokenizer.lowerCase(term));
+
+        double termFrequency = (double) count / words.size();
+        return termFrequency;
+    }
+
+    public static DocumentData createDocumentData(List<String> words, List<String> terms) {
+        DocumentData documentData = new DocumentData();
+        Map<String, int[]> termToCount = countTerms(words, terms);
+
+        for (String term : terms) {
+            int count = termToCount.get(Tokenizer.lowerCase(term))[0];
+            double termFreq = (double) count / words.size();
+            documentData.putTermFrequency(term, termFreq);
+        }
+        return documentData;
+    }
+
+    /**
+     * Counts the words equal to a term ignoring case, in one pass over the words. Case is folded with
+     * {@link Tokenizer#foldCase}, like the workers fold tokens. A word that folds to itself is looked up as it is;
+     * only a word that does not, and has the length of a term, is folded while it is compared with the terms one by
+     * one, which does not allocate like folding it into a new string would.
+     */
+    private static Map<String, int[]> countTerms(List<String> words, List<String> terms) {
+        Map<String, int[]> termToCount = new HashMap<>();
+        for (String term : terms) {
+            termToCount.putIfAbsent(Tokenizer.lowerCase(term), new int[1]);
+        }
+        String[] foldedTerms = termToCount.keySet().toArray(new String[0]);
+        if (foldedTerms.length == 1) {
+            // Comparing every word with the only term is cheaper than looking it up
+            termToCount.get(foldedTerms[0])[0] = countTerm(words, foldedTerms[0]);
+            return termToCount;
+        }
+        int[][] counts = new int[foldedTerms.length][];
+        long termLengths = 0;
+        for (int i = 0; i < foldedTerms.length; i++) {
+            counts[i] = termToCount.get(foldedTerms[i]);
+            termLengths |= lengthBit(foldedTerms[i]);
+        }
+
+        for (String word : words) {
+            int[] count = termToCount.get(word);
+            if (count == null && (termLengths & lengthBit(word)) != 0 && !isFolded(word)) {
+                for (int i = 0; i < foldedTerms.length; i++) {
+                    if (equalsFolded(foldedTerms[i], word)) {
+                        count = counts[i];
+                        break;
+                    }
+                }
+            }
+            if (count != null) {
+                count[0]++;
+            }
+        }
+        return termToCount;
+    }
+
+    private static int countTerm(List<String> words, String foldedTerm) {
+        int count = 0;
         for (String word : words) {
-            if (term.equalsIgnoreCase(word)) {
+            if (word.length() == foldedTerm.length() && equalsFolded(foldedTerm, word)) {
                 count++;
             }
         }
+        return count;
+    }
 
-        double termFrequency = (double) count / words.size();
-        return termFrequency;
+    /**
+     * @return true if case folding leaves the word as it is
+     */
+    private static boolean isFolded(String word) {
+        for (int i = 0; i < word.length(); ) {
+            int codePoint = word.codePointAt(i);
+            if (Tokenizer.foldCase(codePoint) != codePoint) {
+                return false;
+            }
+            i += Character.charCount(codePoint);
+        }
+        return true;
     }
 
-    public static DocumentData createDocumentData(List<String> words, List<String> terms) {
+    private static boolean equalsFolded(String foldedTerm, String word) {
+        int i = 0;
+        int j = 0;
+        while (i < foldedTerm.length() && j < word.length()) {
+            int termCodePoint = foldedTerm.codePointAt(i);
+            int wordCodePoint = word.codePointAt(j);
+            if (termCodePoint != Tokenizer.foldCase(wordCodePoint)) {
+                return false;
+            }
+            i += Character.charCount(termCodePoint);
+            j += Character.charCount(wordCodePoint);
+        }
+        return i == foldedTerm.length() && j == word.length();
+    }
+
+    // Folding maps a code point to one of the same plane, so words can only be equal ignoring case if they have the
+    // same length
+    private static long lengthBit(String word) {
+        return 1L << Math.min(word.length(), 63);
+    }
+
+    public static DocumentData createDocumentData(TermCounter termCounter, List<String> terms) {
         DocumentData documentData = new DocumentData();
 
         for (String term : terms) {
-            double termFreq = TFIDF.calculateTermFrequency(words, term.toLowerCase());
+            double termFreq = (double) termCounter.getCount(term) / termCounter.getTotalTokens();
             documentData.putTermFrequency(term, termFreq);
         }
         return documentData;
@@ -54,20 +151,92 @@ public class TFIDF {
 
     public static Map<Double, List<String>> getDocumentsScores(List<String> terms,
                                                                Map<String, DocumentData> documentResults) {
+        return getDocumentsScores(terms, documentResults, null, 0);
+    }
+
+    /**
+     * @param documentFrequencyCache caches document frequencies across queries, or null to count them every time
+     * @param corpusVersion          identifies the documents in {@code documentResults}, see {@link CorpusVersion}
+     */
+    public static Map<Double, List<String>> getDocumentsScores(List<String> terms,
+                                                               Map<String, DocumentData> documentResults,
+                                                               DocumentFrequencyCache documentFrequencyCache,
+                                                               long corpusVersion) {
         TreeMap<Double, List<String>> scoreToDoc = new TreeMap<>();
 
-        Map<String, Double> termToInverseDocumentFrequency = getTermToInverseDocumentFrequencyMap(terms, documentResults);
+        Map<String, Double> termToInverseDocumentFrequency =
+                getTermToInverseDocumentFrequencyMap(terms, documentResults, documentFrequencyCache, corpusVersion);
 
         for (String document : documentResults.keySet()) {
             DocumentData documentData = documentResults.get(document);
 
             double score = calculateDocumentScore(terms, documentData, termToInverseDocumentFrequency);
 
-            addDocumentScoreToTreeMap(scoreToDoc, score, document);
+            // Adding zero turns -0.0 into 0.0, which the TreeMap would otherwise keep as a separate score
+            addDocumentScoreToTreeMap(scoreToDoc, score + 0.0, document);
+        }
+        for (List<String> documentsWithSameScore : scoreToDoc.values()) {
+            Collections.sort(documentsWithSameScore);
         }
         return scoreToDoc.descendingMap();
     }
 
+    public static List<DocumentScore> getTopDocuments(List<String> terms,
+                                                     Map<String, DocumentData> documentResults,
+                                                     int limit) {
+        return getTopDocuments(terms, documentResults, limit, Double.NEGATIVE_INFINITY);
+    }
+
+    /**
+     * Keeps the best {@code limit} documents in a bounded min-heap instead of sorting every document.
+     * Documents scoring below {@code minScore}, and documents without a score (no words), are left out.
+     *
+     * @return the documents ordered by {@link DocumentScore#BY_RANK}
+     */
+    public static List<DocumentScore> getTopDocuments(List<String> terms,
+                                                     Map<String, DocumentData> documentResults,
+                                                     int limit,
+                                                     double minScore) {
+        return getTopDocuments(terms, documentResults, limit, minScore, null, 0);
+    }
+
+    /**
+     * @param documentFrequencyCache caches document frequencies across queries, or null to count them every time
+     * @param corpusVersion          identifies the documents in {@code documentResults}, see {@link CorpusVersion}
+     */
+    public static List<DocumentScore> getTopDocuments(List<String> terms,
+                                                     Map<String, DocumentData> documentResults,
+                                                     int limit,
+                                                     double minScore,
+                                                     DocumentFrequencyCache documentFrequencyCache,
+                                                     long corpusVersion) {
+        if (limit <= 0) {
+            return Collections.emptyList();
+        }
+        Map<String, Double> termToInverseDocumentFrequency =
+                getTermToInverseDocumentFrequencyMap(terms, documentResults, documentFrequencyCache, corpusVersion);
+
+        Comparator<DocumentScore> worstFirst = DocumentScore.BY_RANK.reversed();
+        PriorityQueue<DocumentScore> topDocuments = new PriorityQueue<>(Math.min(limit, documentResults.size()) + 1, worstFirst);
+        for (Map.Entry<String, DocumentData> documentEntry : documentResults.entrySet()) {
+            double score = calculateDocumentScore(terms, documentEntry.getValue(), termToInverseDocumentFrequency);
+            if (Double.isNaN(score) || score < minScore) {
+                continue;
+            }
+            DocumentScore documentScore = new DocumentScore(documentEntry.getKey(), score);
+            if (topDocuments.size() < limit) {
+                topDocuments.add(documentScore);
+            } else if (worstFirst.compare(documentScore, topDocuments.peek()) > 0) {
+                topDocuments.poll();
+                topDocuments.add(documentScore);
+            }
+        }
+
+        List<DocumentScore> ranked = new ArrayList<>(topDocuments);
+        ranked.sort(DocumentScore.BY_RANK);
+        return ranked;
+    }
+
     private static void addDocumentScoreToTreeMap(TreeMap<Double, List<String>> scoreToDoc, double score, String document) {
         List<String> booksWithCurrentScore = scoreToDoc.get(score);
         if (booksWithCurrentScore == null) {
@@ -89,8 +258,18 @@ public class TFIDF {
         return score;
     }
 
-    private static double getInverseDocumentFrequency(String term, Map<String, DocumentData> documentResults) {
-        double n = 0;
+    private static double getInverseDocumentFrequency(String term,
+                                                      Map<String, DocumentData> documentResults,
+                                                      DocumentFrequencyCache documentFrequencyCache,
+                                                      long corpusVersion) {
+        double n = documentFrequencyCache == null
+                ? getDocumentFrequency(term, documentResults)
+                : documentFrequencyCache.getDocumentFrequency(term, corpusVersion, t -> getDocumentFrequency(t, documentResults));
+        return n == 0 ? 0 : Math.log10(documentResults.size() / n);
+    }
+
+    private static int getDocumentFrequency(String term, Map<String, DocumentData> documentResults) {
+        int n = 0;
         for (String document : documentResults.keySet()) {
             DocumentData documentData = documentResults.get(document);
             double termFrequency = documentData.getFrequency(term);
@@ -98,14 +277,16 @@ public class TFIDF {
                 n++;
             }
         }
-        return n == 0 ? 0 : Math.log10(documentResults.size() / n);
+        return n;
     }
 
     private static Map<String, Double> getTermToInverseDocumentFrequencyMap(List<String> terms,
-                                                                            Map<String, DocumentData> documentResults) {
+                                                                            Map<String, DocumentData> documentResults,
+                                                                            DocumentFrequencyCache documentFrequencyCache,
+                                                                            long corpusVersion) {
         Map<String, Double> termToIDF = new HashMap<>();
         for (String term : terms) {
-            double idf = getInverseDocumentFrequency(term, documentResults);
+            double idf = getInverseDocumentFrequency(term, documentResults, documentFrequencyCache, corpusVersion);
             termToIDF.put(term, idf);
         }
         return termToIDF;
@@ -114,12 +295,12 @@ public class TFIDF {
     public static List<String> getWordsFromDocument(List<String> lines) {
         List<String> words = new ArrayList<>();
         for (String line : lines) {
-            words.addAll(getWordsFromLine(line));
+            Tokenizer.split(line, words);
         }
         return words;
     }
 
     public static List<String> getWordsFromLine(String line) {
-        return Arrays.asList(line.split("(\\.)+|(,)+|( )+|(-)+|(\\?)+|(!)+|(;)+|(:)+|(/d)+|(/n)+"));
+        return Tokenizer.split(line);
     }
 }
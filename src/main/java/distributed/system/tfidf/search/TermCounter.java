@@ -0,0 +1,140 @@
+package distributed.system.tfidf.search;
+
+import java.util.Collection;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Counts lower cased tokens straight from the tokenizer buffer. Lookups hash the chars in place,
+ * so only a token seen for the first time while counting all tokens allocates a String.
+ */
+public class TermCounter implements Tokenizer.TokenConsumer {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final boolean countAllTokens;
+    private String[] keys;
+    private int[] hashes;
+    private int[] counts;
+    private int size;
+    private long totalTokens;
+
+    /**
+     * Counts every distinct token
+     */
+    public TermCounter() {
+        this.countAllTokens = true;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Counts only the given terms, all other tokens only add to the total
+     */
+    public TermCounter(Collection<String> terms) {
+        this.countAllTokens = false;
+        allocate(Integer.highestOneBit(Math.max(terms.size(), 1) * 4));
+        for (String term : terms) {
+            String lowerCaseTerm = Tokenizer.lowerCase(term);
+            int slot = findSlot(lowerCaseTerm, lowerCaseTerm.hashCode());
+            if (keys[slot] == null) {
+                insert(slot, lowerCaseTerm, lowerCaseTerm.hashCode(), 0);
+            }
+        }
+    }
+
+    @Override
+    public void accept(char[] token, int length) {
+        totalTokens++;
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + token[i];
+        }
+
+        int mask = keys.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            String key = keys[slot];
+            if (key == null) {
+                if (countAllTokens) {
+                    insert(slot, new String(token, 0, length), hash, 1);
+                }
+                return;
+            }
+            if (hashes[slot] == hash && equals(key, token, length)) {
+                counts[slot]++;
+                return;
+            }
+        }
+    }
+
+    public int getCount(String term) {
+        String lowerCaseTerm = Tokenizer.lowerCase(term);
+        int slot = findSlot(lowerCaseTerm, lowerCaseTerm.hashCode());
+        return keys[slot] == null ? 0 : counts[slot];
+    }
+
+    public long getTotalTokens() {
+        return totalTokens;
+    }
+
+    public void forEach(ObjIntConsumer<String> consumer) {
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != null && counts[slot] > 0) {
+                consumer.accept(keys[slot], counts[slot]);
+            }
+        }
+    }
+
+    private int findSlot(String key, int hash) {
+        int mask = keys.length - 1;
+        int slot = hash & mask;
+        while (keys[slot] != null && !(hashes[slot] == hash && keys[slot].equals(key))) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void insert(int slot, String key, int hash, int count) {
+        keys[slot] = key;
+        hashes[slot] = hash;
+        counts[slot] = count;
+        size++;
+        if (size * 2 > keys.length) {
+            rehash();
+        }
+    }
+
+    private void rehash() {
+        String[] oldKeys = keys;
+        int[] oldHashes = hashes;
+        int[] oldCounts = counts;
+        allocate(oldKeys.length * 2);
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = oldHashes[i] & mask;
+                while (keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                hashes[slot] = oldHashes[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new String[capacity];
+        hashes = new int[capacity];
+        counts = new int[capacity];
+    }
+
+    private static boolean equals(String key, char[] token, int length) {
+        if (key.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (key.charAt(i) != token[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,175 @@
+package distributed.system.tfidf.search;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hand written replacement for splitting a line on the pattern
+ * {@code (\.)+|(,)+|( )+|(-)+|(\?)+|(!)+|(;)+|(:)+|(/d)+|(/n)+} with {@link String#split(String)}.
+ * A run of one delimiter ends a token, so two different adjacent delimiters produce an empty token,
+ * leading empty tokens are kept, trailing ones are dropped, and a line without delimiters is a single token.
+ * <p>
+ * Tokens are case folded code point by code point into a reusable buffer, see {@link #foldCase(int)}. Unlike
+ * {@link String#toLowerCase()} this ignores the default locale and context sensitive mappings such as the final
+ * sigma. A tokenizer is not thread safe.
+ */
+public class Tokenizer {
+    private static final int INITIAL_BUFFER_SIZE = 64;
+
+    public interface TokenConsumer {
+        /**
+         * @param token  buffer holding the lower cased token, only valid for the duration of the call
+         * @param length number of chars of the token in the buffer
+         */
+        void accept(char[] token, int length);
+    }
+
+    private interface BoundaryConsumer {
+        void accept(CharSequence line, int start, int end);
+    }
+
+    private char[] buffer = new char[INITIAL_BUFFER_SIZE];
+    private TokenConsumer tokenConsumer;
+    private final BoundaryConsumer lowerCasingConsumer = this::lowerCase;
+
+    public void tokenize(CharSequence line, TokenConsumer consumer) {
+        tokenize(line, 0, line.length(), consumer);
+    }
+
+    public void tokenize(CharSequence chars, int start, int end, TokenConsumer consumer) {
+        this.tokenConsumer = consumer;
+        try {
+            forEachToken(chars, start, end, lowerCasingConsumer);
+        } finally {
+            this.tokenConsumer = null;
+        }
+    }
+
+    /**
+     * @return the tokens of the line in their original case
+     */
+    public static List<String> split(CharSequence line) {
+        List<String> tokens = new ArrayList<>();
+        split(line, tokens);
+        return tokens;
+    }
+
+    public static void split(CharSequence line, List<String> tokens) {
+        forEachToken(line, 0, line.length(), (chars, start, end) -> tokens.add(chars.subSequence(start, end).toString()));
+    }
+
+    /**
+     * Case folds a term the same way tokens are case folded
+     */
+    public static String lowerCase(String term) {
+        StringBuilder lowerCased = new StringBuilder(term.length());
+        term.codePoints().map(Tokenizer::foldCase).forEach(lowerCased::appendCodePoint);
+        return lowerCased.toString();
+    }
+
+    /**
+     * The one case folding rule of the search: upper casing and then lower casing the code point, which is how
+     * {@link String#equalsIgnoreCase} compares characters. So 'ı' and 'ſ' fold to "i" and "s", like they match
+     * them ignoring case, where lower casing alone would keep them apart.
+     */
+    public static int foldCase(int codePoint) {
+        if (codePoint < 0x80) {
+            return codePoint >= 'A' && codePoint <= 'Z' ? codePoint + ('a' - 'A') : codePoint;
+        }
+        return Character.toLowerCase(Character.toUpperCase(codePoint));
+    }
+
+    private void lowerCase(CharSequence chars, int start, int end) {
+        // A char can fold to a surrogate pair
+        int length = 2 * (end - start);
+        if (buffer.length < length) {
+            buffer = new char[Math.max(length, buffer.length * 2)];
+        }
+        int index = 0;
+        for (int i = start; i < end; i++) {
+            char c = chars.charAt(i);
+            if (c < 0x80) {
+                buffer[index++] = c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+            } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(chars.charAt(i + 1))) {
+                index += Character.toChars(foldCase(Character.toCodePoint(c, chars.charAt(i + 1))), buffer, index);
+                i++;
+            } else {
+                index += Character.toChars(foldCase(c), buffer, index);
+            }
+        }
+        tokenConsumer.accept(buffer, index);
+    }
+
+    private static void forEachToken(CharSequence chars, int start, int end, BoundaryConsumer consumer) {
+        int tokenStart = start;
+        int pendingEmptyTokens = 0;
+        boolean foundDelimiter = false;
+
+        int i = start;
+        while (i < end) {
+            int delimiterEnd = delimiterRunEnd(chars, i, end);
+            if (delimiterEnd == i) {
+                i++;
+                continue;
+            }
+            foundDelimiter = true;
+            if (i == tokenStart) {
+                // Empty tokens are only emitted once a non empty token follows them
+                pendingEmptyTokens++;
+            } else {
+                for (; pendingEmptyTokens > 0; pendingEmptyTokens--) {
+                    consumer.accept(chars, tokenStart, tokenStart);
+                }
+                consumer.accept(chars, tokenStart, i);
+            }
+            i = delimiterEnd;
+            tokenStart = i;
+        }
+
+        if (!foundDelimiter) {
+            consumer.accept(chars, start, end);
+        } else if (tokenStart < end) {
+            for (; pendingEmptyTokens > 0; pendingEmptyTokens--) {
+                consumer.accept(chars, tokenStart, tokenStart);
+            }
+            consumer.accept(chars, tokenStart, end);
+        }
+    }
+
+    /**
+     * @return the end of the delimiter run starting at the index, or the index itself if there is no delimiter there
+     */
+    private static int delimiterRunEnd(CharSequence chars, int index, int end) {
+        char c = chars.charAt(index);
+        switch (c) {
+            case '.':
+            case ',':
+            case ' ':
+            case '-':
+            case '?':
+            case '!':
+            case ';':
+            case ':':
+                int i = index + 1;
+                while (i < end && chars.charAt(i) == c) {
+                    i++;
+                }
+                return i;
+            case '/':
+                if (index + 1 >= end) {
+                    return index;
+                }
+                char unit = chars.charAt(index + 1);
+                if (unit != 'd' && unit != 'n') {
+                    return index;
+                }
+                int j = index;
+                while (j + 1 < end && chars.charAt(j) == '/' && chars.charAt(j + 1) == unit) {
+                    j += 2;
+                }
+                return j;
+            default:
+                return index;
+        }
+    }
+}
@@ -1,5 +1,21 @@
 package distributed.system.zookeeper;
+import distributed.system.Aggregator;
+import distributed.system.WebClient;
+import distributed.system.WebClientConfig;
+import distributed.system.networking.AdmissionConfig;
+import distributed.system.networking.CompressionConfig;
+import distributed.system.networking.ContentCodec;
+import distributed.system.networking.ExecutorConfig;
+import distributed.system.tfidf.index.DocumentIndex;
+import distributed.system.tfidf.index.IndexRefresher;
+import distributed.system.tfidf.search.DocumentsDirectory;
+import distributed.system.tfidf.search.ResultCache;
+import distributed.system.tfidf.search.SearchCoordinator;
+import distributed.system.tfidf.search.SearchWorker;
+import distributed.system.tfidf.search.ShardScheduler;
+import distributed.system.zookeeper.cluster.management.AsyncZooKeeper;
 import distributed.system.zookeeper.cluster.management.LeaderElection;
+import distributed.system.zookeeper.cluster.management.ServiceMetadata;
 import distributed.system.zookeeper.cluster.management.ServiceRegistry;
 import org.apache.zookeeper.KeeperException;
 import org.apache.zookeeper.WatchedEvent;
@@ -7,27 +23,119 @@ import org.apache.zookeeper.Watcher;
 import org.apache.zookeeper.ZooKeeper;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
 
 /**
  * Worker Node Implementation - Distributed Search  Part 1
  */
 public class Application implements Watcher {
     private static final String ZOOKEEPER_ADDRESS = "localhost:2181";
-    private static final int SESSION_TIMEOUT = 3000;
+    private static final String SESSION_TIMEOUT_MILLIS_PROPERTY = "zookeeper.session.timeout.millis";
+    // A crashed leader is replaced once its session times out, a shorter timeout fails over faster but a long GC
+    // pause or network hiccup then costs a node its session
+    private static final int DEFAULT_SESSION_TIMEOUT = 3000;
+    // How often the leader touches its election znode, which is how a node taking over measures how long the
+    // leader had been gone
+    private static final String HEARTBEAT_MILLIS_PROPERTY = "election.heartbeat.millis";
+    private static final String SEARCH_PARALLELISM_PROPERTY = "search.parallelism";
+    private static final String RESULT_CACHE_BYTES_PROPERTY = "search.result.cache.bytes";
+    private static final long DEFAULT_RESULT_CACHE_BYTES = 64L * 1024 * 1024;
+    private static final String EXECUTOR_MODE_PROPERTY = "webserver.executor";
+    private static final String EXECUTOR_THREADS_PROPERTY = "webserver.threads";
+    private static final String EXECUTOR_QUEUE_PROPERTY = "webserver.queue";
+    private static final int DEFAULT_EXECUTOR_QUEUE = 64;
+    private static final String DOCUMENTS_DIRECTORY_PROPERTY = "search.documents";
+    private static final String INDEX_REFRESH_MILLIS_PROPERTY = "index.refresh.millis";
+    private static final long DEFAULT_INDEX_REFRESH_MILLIS = 5000;
+    private static final String DEFAULT_DOCUMENTS_DIRECTORY = "./resources/books";
+    private static final String TOP_RESULTS_PROPERTY = "search.top.results";
+    private static final String DEADLINE_MILLIS_PROPERTY = "search.deadline.millis";
+    private static final String HEDGING_PROPERTY = "search.hedging";
+    private static final String SHARD_ASSIGNMENT_PROPERTY = "search.assignment";
+    private static final String CLIENT_CONNECTIONS_PROPERTY = "webclient.connections";
+    private static final String CONNECTION_POOL_SIZE_PROPERTY = "jdk.httpclient.connectionPoolSize";
+    private static final String NO_DELAY_PROPERTY = "sun.net.httpserver.nodelay";
+    private static final String CLIENT_CONNECT_TIMEOUT_MILLIS_PROPERTY = "webclient.connect.timeout.millis";
+    private static final String CLIENT_ACCEPT_ENCODING_PROPERTY = "webclient.accept.encoding";
+    private static final String COMPRESSION_PROPERTY = "webserver.compression";
+    private static final String COMPRESSION_MIN_BYTES_PROPERTY = "webserver.compression.min.bytes";
+    private static final String WORKER_CAPACITY_PROPERTY = "worker.capacity";
+    private static final String WORKER_SHARDS_PROPERTY = "worker.shards";
+    private static final String ADMISSION_MAX_IN_FLIGHT_PROPERTY = "webserver.admission.max.in.flight";
+    private static final String ADMISSION_MAX_QUEUE_WAIT_MILLIS_PROPERTY = "webserver.admission.max.queue.wait.millis";
     private ZooKeeper zooKeeper;
 
     public static void main(String[] args) throws IOException, InterruptedException, KeeperException {
+        setJdkNetworkingProperties();
         int currentServerPort = 8080;
-        if (args.length == 1) {
+        if (args.length >= 1) {
             currentServerPort = Integer.parseInt(args[0]);
         }
+        int searchParallelism = Integer.getInteger(SEARCH_PARALLELISM_PROPERTY, 1);
+        long resultCacheBytes = Long.getLong(RESULT_CACHE_BYTES_PROPERTY, DEFAULT_RESULT_CACHE_BYTES);
+        ExecutorConfig executorConfig = ExecutorConfig.of(System.getProperty(EXECUTOR_MODE_PROPERTY, "fixed"),
+                Integer.getInteger(EXECUTOR_THREADS_PROPERTY, ExecutorConfig.DEFAULT_THREADS),
+                Integer.getInteger(EXECUTOR_QUEUE_PROPERTY, DEFAULT_EXECUTOR_QUEUE));
+        // Listed once for the worker's result cache and the coordinator, whichever role the node has
+        DocumentsDirectory documentsDirectory = new DocumentsDirectory(
+                System.getProperty(DOCUMENTS_DIRECTORY_PROPERTY, DEFAULT_DOCUMENTS_DIRECTORY));
+        IndexRefresher indexRefresher = args.length >= 2 ? startIndexRefresher(Paths.get(args[1]), documentsDirectory) : null;
+        Supplier<DocumentIndex> documentIndex = indexRefresher == null ? () -> null : indexRefresher::getDocumentIndex;
+        Supplier<SearchWorker> searchWorkerFactory = () -> new SearchWorker(documentIndex, searchParallelism,
+                resultCacheBytes > 0 ? new ResultCache(resultCacheBytes, documentsDirectory) : null);
+        int topResults = Integer.getInteger(TOP_RESULTS_PROPERTY, SearchCoordinator.DEFAULT_TOP_RESULTS);
+        Duration searchDeadline = Duration.ofMillis(Long.getLong(DEADLINE_MILLIS_PROPERTY,
+                SearchCoordinator.DEFAULT_DEADLINE.toMillis()));
+        boolean hedging = Boolean.parseBoolean(System.getProperty(HEDGING_PROPERTY, "true"));
+        ShardScheduler.Mode shardAssignment = ShardScheduler.Mode.valueOf(
+                System.getProperty(SHARD_ASSIGNMENT_PROPERTY, "balanced").toUpperCase());
+        WebClientConfig webClientConfig = WebClientConfig.defaults()
+                .withConnectTimeout(Duration.ofMillis(Long.getLong(CLIENT_CONNECT_TIMEOUT_MILLIS_PROPERTY,
+                        WebClientConfig.DEFAULT_CONNECT_TIMEOUT.toMillis())))
+                .withAcceptedEncodings(ContentCodec.forNames(System.getProperty(CLIENT_ACCEPT_ENCODING_PROPERTY, "")));
+        CompressionConfig compressionConfig = CompressionConfig.of(System.getProperty(COMPRESSION_PROPERTY, "x-lz4,gzip"),
+                Integer.getInteger(COMPRESSION_MIN_BYTES_PROPERTY, CompressionConfig.DEFAULT_MIN_BYTES));
+        String workerShards = System.getProperty(WORKER_SHARDS_PROPERTY, "");
+        ServiceMetadata workerMetadata = new ServiceMetadata(null,
+                Integer.getInteger(WORKER_CAPACITY_PROPERTY, Runtime.getRuntime().availableProcessors()), 0,
+                workerShards.isEmpty() ? List.of() : Arrays.asList(workerShards.split(",")));
+        AdmissionConfig admissionConfig = AdmissionConfig.of(Integer.getInteger(ADMISSION_MAX_IN_FLIGHT_PROPERTY, 0),
+                Duration.ofMillis(Long.getLong(ADMISSION_MAX_QUEUE_WAIT_MILLIS_PROPERTY,
+                        AdmissionConfig.DEFAULT_MAX_QUEUE_WAIT.toMillis())));
         Application application = new Application();
-        ZooKeeper zooKeeper = application.connectToZookeeper();
+        // Watches of the election and of the registries are handled on a shared executor, not one after another
+        AsyncZooKeeper zooKeeper = new AsyncZooKeeper(application.connectToZookeeper(
+                Integer.getInteger(SESSION_TIMEOUT_MILLIS_PROPERTY, DEFAULT_SESSION_TIMEOUT)));
 
         ServiceRegistry workersServiceRegistry = new ServiceRegistry(zooKeeper, ServiceRegistry.WORKERS_REGISTRY_ZNODE);
-        OnElectionAction onElectionAction = new OnElectionAction(workersServiceRegistry, currentServerPort);
+        ServiceRegistry coordinatorsServiceRegistry = new ServiceRegistry(zooKeeper, ServiceRegistry.COORDINATORS_REGISTRY_ZNODE);
+        // Called once, when this node is first elected, so the client's selector thread and the hedging thread of the
+        // aggregator are started once per process
+        Supplier<SearchCoordinator> searchCoordinatorFactory = () -> new SearchCoordinator(workersServiceRegistry,
+                new Aggregator(new WebClient(webClientConfig), hedging), documentsDirectory, topResults, searchDeadline,
+                new ShardScheduler(shardAssignment));
+        OnElectionAction onElectionAction = new OnElectionAction(workersServiceRegistry, coordinatorsServiceRegistry,
+                currentServerPort, searchWorkerFactory, searchCoordinatorFactory, executorConfig, compressionConfig,
+                workerMetadata, admissionConfig);
 
-        LeaderElection leaderElection = new LeaderElection(zooKeeper, onElectionAction);
+        LeaderElection leaderElection = new LeaderElection(zooKeeper, onElectionAction, Duration.ofMillis(
+                Long.getLong(HEARTBEAT_MILLIS_PROPERTY, LeaderElection.DEFAULT_HEARTBEAT_INTERVAL.toMillis())));
+        onElectionAction.addLeaderMetricsSource(leaderElection);
+        // On a planned shutdown the next node takes over straight away, not once this node's session times out
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            leaderElection.resign();
+            onElectionAction.stop();
+            try {
+                application.close();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }, "graceful-resign"));
         leaderElection.volunteerForLeadership();
         leaderElection.reelectLeader();
 
@@ -36,8 +144,43 @@ public class Application implements Watcher {
         System.out.println("Disconnected from Zookeeper, exiting application");
     }
 
+    /**
+     * The JDK's HTTP server and client read these once per JVM, so they are set here, before either is created,
+     * unless they were given on the command line
+     */
+    private static void setJdkNetworkingProperties() {
+        // The web server writes the response headers and body separately, see WebServer
+        if (System.getProperty(NO_DELAY_PROPERTY) == null) {
+            System.setProperty(NO_DELAY_PROPERTY, "true");
+        }
+        // The most idle connections a client keeps open for reuse, 0 for no limit
+        int clientConnections = Integer.getInteger(CLIENT_CONNECTIONS_PROPERTY, 0);
+        if (clientConnections > 0 && System.getProperty(CONNECTION_POOL_SIZE_PROPERTY) == null) {
+            System.setProperty(CONNECTION_POOL_SIZE_PROPERTY, Integer.toString(clientConnections));
+        }
+    }
+
+    /**
+     * Maps the index if it was built before, and from then on rebuilds it incrementally whenever the documents change
+     */
+    private static IndexRefresher startIndexRefresher(Path indexDirectory, DocumentsDirectory documentsDirectory)
+            throws IOException {
+        IndexRefresher indexRefresher = new IndexRefresher(indexDirectory, documentsDirectory);
+        if (indexRefresher.getDocumentIndex() == null) {
+            System.out.println("No index found in " + indexDirectory + ", documents are read from disk until it is built");
+        } else {
+            System.out.println("Mapping index from " + indexDirectory);
+        }
+        indexRefresher.start(Duration.ofMillis(Long.getLong(INDEX_REFRESH_MILLIS_PROPERTY, DEFAULT_INDEX_REFRESH_MILLIS)));
+        return indexRefresher;
+    }
+
     public ZooKeeper connectToZookeeper() throws IOException {
-        this.zooKeeper = new ZooKeeper(ZOOKEEPER_ADDRESS, SESSION_TIMEOUT, this);
+        return connectToZookeeper(DEFAULT_SESSION_TIMEOUT);
+    }
+
+    public ZooKeeper connectToZookeeper(int sessionTimeoutMillis) throws IOException {
+        this.zooKeeper = new ZooKeeper(ZOOKEEPER_ADDRESS, sessionTimeoutMillis, this);
         return zooKeeper;
     }
 
@@ -1,46 +1,219 @@
 package distributed.system.zookeeper;
+
+import distributed.system.networking.AdmissionConfig;
+import distributed.system.networking.CompressionConfig;
+import distributed.system.networking.ExecutorConfig;
+import distributed.system.networking.MetricsSource;
+import distributed.system.networking.OnRequestCallback;
 import distributed.system.networking.WebServer;
+import distributed.system.tfidf.search.SearchCoordinator;
 import distributed.system.tfidf.search.SearchWorker;
 import distributed.system.zookeeper.cluster.management.OnElectionCallback;
+import distributed.system.zookeeper.cluster.management.ServiceMetadata;
 import distributed.system.zookeeper.cluster.management.ServiceRegistry;
 import org.apache.zookeeper.KeeperException;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 public class OnElectionAction implements OnElectionCallback {
-    private final ServiceRegistry serviceRegistry;
+    // How often a worker publishes its load; the registry writes it at most every half second, and only if it changed
+    private static final long METADATA_REFRESH_MILLIS = 1000;
+    private final ServiceRegistry workersServiceRegistry;
+    private final ServiceRegistry coordinatorsServiceRegistry;
     private final int port;
-    private WebServer webServer;
+    private final Supplier<SearchWorker> searchWorkerFactory;
+    private final Supplier<SearchCoordinator> searchCoordinatorFactory;
+    private final ExecutorConfig executorConfig;
+    private final CompressionConfig compressionConfig;
+    private final ServiceMetadata workerMetadata;
+    private final AdmissionConfig admissionConfig;
+    private final List<MetricsSource> leaderMetricsSources = new CopyOnWriteArrayList<>();
+    private SearchWorker searchWorker;
+    private SearchCoordinator searchCoordinator;
+    private volatile WebServer webServer;
+    private ScheduledExecutorService metadataRefresher;
+    // Only used by the metadata refresher
+    private long refreshedBusyNanos;
+    private long refreshedNanos;
 
     public OnElectionAction(ServiceRegistry serviceRegistry, int port) {
-        this.serviceRegistry = serviceRegistry;
+        this(serviceRegistry, port, SearchWorker::new, ExecutorConfig.fixed(ExecutorConfig.DEFAULT_THREADS));
+    }
+
+    public OnElectionAction(ServiceRegistry serviceRegistry, int port,
+                            Supplier<SearchWorker> searchWorkerFactory, ExecutorConfig executorConfig) {
+        this(serviceRegistry, null, port, searchWorkerFactory, null, executorConfig);
+    }
+
+    public OnElectionAction(ServiceRegistry workersServiceRegistry, ServiceRegistry coordinatorsServiceRegistry, int port,
+                            Supplier<SearchWorker> searchWorkerFactory, Supplier<SearchCoordinator> searchCoordinatorFactory,
+                            ExecutorConfig executorConfig) {
+        this(workersServiceRegistry, coordinatorsServiceRegistry, port, searchWorkerFactory, searchCoordinatorFactory,
+                executorConfig, CompressionConfig.defaults());
+    }
+
+    public OnElectionAction(ServiceRegistry workersServiceRegistry, ServiceRegistry coordinatorsServiceRegistry, int port,
+                            Supplier<SearchWorker> searchWorkerFactory, Supplier<SearchCoordinator> searchCoordinatorFactory,
+                            ExecutorConfig executorConfig, CompressionConfig compressionConfig) {
+        this(workersServiceRegistry, coordinatorsServiceRegistry, port, searchWorkerFactory, searchCoordinatorFactory,
+                executorConfig, compressionConfig,
+                new ServiceMetadata(null, Runtime.getRuntime().availableProcessors(), 0, List.of()));
+    }
+
+    /**
+     * @param coordinatorsServiceRegistry where the leader publishes the address of its search endpoint
+     * @param searchCoordinatorFactory    creates the coordinator the leader serves, or null if the leader
+     *                                    only watches the workers; called once, since the coordinator's client and
+     *                                    hedging threads are never stopped, and reused if this node is elected again
+     * @param compressionConfig           how the server compresses responses for clients that accept it
+     * @param workerMetadata              the capacity and shards this node registers with as a worker; the address
+     *                                    and load are filled in
+     */
+    public OnElectionAction(ServiceRegistry workersServiceRegistry, ServiceRegistry coordinatorsServiceRegistry, int port,
+                            Supplier<SearchWorker> searchWorkerFactory, Supplier<SearchCoordinator> searchCoordinatorFactory,
+                            ExecutorConfig executorConfig, CompressionConfig compressionConfig,
+                            ServiceMetadata workerMetadata) {
+        this(workersServiceRegistry, coordinatorsServiceRegistry, port, searchWorkerFactory, searchCoordinatorFactory,
+                executorConfig, compressionConfig, workerMetadata, AdmissionConfig.disabled());
+    }
+
+    /**
+     * @param admissionConfig when this node turns tasks away as a worker; it publishes that it is saturated while it
+     *                        does, so the leader sends the tasks to other workers
+     */
+    public OnElectionAction(ServiceRegistry workersServiceRegistry, ServiceRegistry coordinatorsServiceRegistry, int port,
+                            Supplier<SearchWorker> searchWorkerFactory, Supplier<SearchCoordinator> searchCoordinatorFactory,
+                            ExecutorConfig executorConfig, CompressionConfig compressionConfig,
+                            ServiceMetadata workerMetadata, AdmissionConfig admissionConfig) {
+        this.workersServiceRegistry = workersServiceRegistry;
+        this.coordinatorsServiceRegistry = coordinatorsServiceRegistry;
         this.port = port;
+        this.searchWorkerFactory = searchWorkerFactory;
+        this.searchCoordinatorFactory = searchCoordinatorFactory;
+        this.executorConfig = executorConfig;
+        this.compressionConfig = compressionConfig;
+        this.workerMetadata = workerMetadata;
+        this.admissionConfig = admissionConfig;
     }
 
     @Override
     public void onElectedToBeLeader() {
-        serviceRegistry.unregisterFromCluster();
-        serviceRegistry.registerForUpdates();
+        stopMetadataRefresher();
+        workersServiceRegistry.unregisterFromCluster();
+        workersServiceRegistry.registerForUpdates();
+        if (searchCoordinatorFactory == null) {
+            return;
+        }
+
+        // A worker that takes over as leader stops serving tasks and serves searches on the same port instead
+        if (webServer != null) {
+            webServer.stop();
+        }
+        if (searchCoordinator == null) {
+            searchCoordinator = searchCoordinatorFactory.get();
+        }
+        webServer = new WebServer(port, searchCoordinator, executorConfig, compressionConfig);
+        webServer.addMetricsSource(workersServiceRegistry);
+        leaderMetricsSources.forEach(webServer::addMetricsSource);
+        webServer.startServer();
+
+        try {
+            coordinatorsServiceRegistry.registerToCluster(getServerAddress(searchCoordinator));
+        } catch (InterruptedException | UnknownHostException | KeeperException e) {
+            e.printStackTrace();
+        }
     }
 
     @Override
     public void onWorker() {
-        SearchWorker searchWorker = new SearchWorker();
         if (webServer == null) {
-            webServer = new WebServer(port, searchWorker);
+            searchWorker = searchWorkerFactory.get();
+            webServer = new WebServer(port, searchWorker, executorConfig, compressionConfig, admissionConfig);
             webServer.startServer();
         }
 
+        ServiceMetadata registeredMetadata;
         try {
-            String currentServerAddress =
-                    String.format("http://%s:%d%s", InetAddress.getLocalHost().getCanonicalHostName(), port, searchWorker.getEndpoint());
-
-            serviceRegistry.registerToCluster(currentServerAddress);
+            registeredMetadata = workerMetadata.withAddress(getServerAddress(searchWorker));
+            workersServiceRegistry.registerToCluster(registeredMetadata);
         } catch (InterruptedException | UnknownHostException | KeeperException e) {
             e.printStackTrace();
             return;
         }
+        startMetadataRefresher(registeredMetadata);
+    }
+
+    /**
+     * Adds metrics to the server this node starts when it is elected leader
+     */
+    public void addLeaderMetricsSource(MetricsSource metricsSource) {
+        leaderMetricsSources.add(metricsSource);
+    }
+
+    /**
+     * Takes this node's addresses out of the registries, so no more requests are routed to it, then stops its server
+     */
+    public void stop() {
+        stopMetadataRefresher();
+        workersServiceRegistry.unregisterFromCluster();
+        if (coordinatorsServiceRegistry != null) {
+            coordinatorsServiceRegistry.unregisterFromCluster();
+        }
+        if (webServer != null) {
+            webServer.stop();
+        }
+    }
+
+    private synchronized void startMetadataRefresher(ServiceMetadata registeredMetadata) {
+        if (metadataRefresher != null) {
+            return;
+        }
+        refreshedBusyNanos = searchWorker.getBusyNanos();
+        refreshedNanos = System.nanoTime();
+        metadataRefresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "registry-metadata");
+            thread.setDaemon(true);
+            return thread;
+        });
+        metadataRefresher.scheduleWithFixedDelay(() -> refreshMetadata(registeredMetadata),
+                METADATA_REFRESH_MILLIS, METADATA_REFRESH_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void stopMetadataRefresher() {
+        if (metadataRefresher != null) {
+            metadataRefresher.shutdownNow();
+            metadataRefresher = null;
+        }
+    }
+
+    /**
+     * Publishes the share of the capacity the worker used since the last refresh as its load, from the time its
+     * document threads were busy, and whether its server is turning tasks away
+     */
+    private void refreshMetadata(ServiceMetadata registeredMetadata) {
+        long busyNanos = searchWorker.getBusyNanos();
+        long now = System.nanoTime();
+        double load = (double) (busyNanos - refreshedBusyNanos) / ((now - refreshedNanos) * registeredMetadata.getCapacity());
+        refreshedBusyNanos = busyNanos;
+        refreshedNanos = now;
+        WebServer workerServer = webServer;
+        boolean saturated = workerServer != null && workerServer.isSaturated();
+        try {
+            workersServiceRegistry.updateMetadata(registeredMetadata.withLoad(load).withSaturated(saturated));
+        } catch (RuntimeException e) {
+            // Thrown out of the task, it would cancel all the later refreshes
+            e.printStackTrace();
+        }
+    }
 
+    private String getServerAddress(OnRequestCallback callback) throws UnknownHostException {
+        return String.format("http://%s:%d%s", InetAddress.getLocalHost().getCanonicalHostName(), port, callback.getEndpoint());
     }
 }
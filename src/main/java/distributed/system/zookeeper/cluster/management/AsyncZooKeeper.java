@@ -0,0 +1,179 @@
+package distributed.system.zookeeper.cluster.management;
+
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link CompletableFuture} adapters over the callback API of a {@link ZooKeeper} client, and the executor watches
+ * are handled on.
+ * <p>
+ * ZooKeeper runs watchers and callbacks one at a time on a single event thread, so a watcher that waits for
+ * ZooKeeper holds up every other watcher and callback of the session. The futures are completed on that thread, so
+ * what is chained to them without an executor must not block, while watchers wrapped by {@link #onWatchExecutor}
+ * run on their own threads, and may.
+ */
+public class AsyncZooKeeper {
+    private static final ExecutorService DEFAULT_WATCH_EXECUTOR = Executors.newCachedThreadPool(new WatchThreadFactory());
+
+    private final ZooKeeper zooKeeper;
+    private final Executor watchExecutor;
+
+    public AsyncZooKeeper(ZooKeeper zooKeeper) {
+        this(zooKeeper, DEFAULT_WATCH_EXECUTOR);
+    }
+
+    public AsyncZooKeeper(ZooKeeper zooKeeper, Executor watchExecutor) {
+        this.zooKeeper = zooKeeper;
+        this.watchExecutor = watchExecutor;
+    }
+
+    public ZooKeeper getZooKeeper() {
+        return zooKeeper;
+    }
+
+    public Executor getWatchExecutor() {
+        return watchExecutor;
+    }
+
+    /**
+     * ZooKeeper keeps one watch per watcher object and path, so the returned watcher should be created once and
+     * reused, rather than wrapped again on every read.
+     *
+     * @return a watcher that hands every event to {@code watcher} on the watch executor
+     */
+    public Watcher onWatchExecutor(Watcher watcher) {
+        return event -> watchExecutor.execute(() -> watcher.process(event));
+    }
+
+    public CompletableFuture<String> create(String path, byte[] data, CreateMode createMode) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        zooKeeper.create(path, data, ZooDefs.Ids.OPEN_ACL_UNSAFE, createMode,
+                (resultCode, resultPath, context, name) -> complete(future, resultCode, resultPath, name), null);
+        return future;
+    }
+
+    /**
+     * @return a future that also completes normally if the node already existed
+     */
+    public CompletableFuture<Void> createIfMissing(String path, CreateMode createMode) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        zooKeeper.create(path, new byte[]{}, ZooDefs.Ids.OPEN_ACL_UNSAFE, createMode, (resultCode, resultPath, context, name) -> {
+            if (resultCode == KeeperException.Code.NODEEXISTS.intValue()) {
+                future.complete(null);
+            } else {
+                complete(future, resultCode, resultPath, null);
+            }
+        }, null);
+        return future;
+    }
+
+    /**
+     * @return a future that completes with false if there was no such node
+     */
+    public CompletableFuture<Boolean> delete(String path, int version) {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        zooKeeper.delete(path, version, (resultCode, resultPath, context) -> {
+            if (resultCode == KeeperException.Code.NONODE.intValue()) {
+                future.complete(false);
+            } else {
+                complete(future, resultCode, resultPath, true);
+            }
+        }, null);
+        return future;
+    }
+
+    /**
+     * @param watcher set even if the node does not exist, to hear about its creation; null for none
+     * @return a future that completes with null if there is no such node
+     */
+    public CompletableFuture<Stat> exists(String path, Watcher watcher) {
+        CompletableFuture<Stat> future = new CompletableFuture<>();
+        zooKeeper.exists(path, watcher, (resultCode, resultPath, context, stat) -> {
+            if (resultCode == KeeperException.Code.NONODE.intValue()) {
+                future.complete(null);
+            } else {
+                complete(future, resultCode, resultPath, stat);
+            }
+        }, null);
+        return future;
+    }
+
+    /**
+     * @param watcher null for none
+     */
+    public CompletableFuture<List<String>> getChildren(String path, Watcher watcher) {
+        CompletableFuture<List<String>> future = new CompletableFuture<>();
+        zooKeeper.getChildren(path, watcher,
+                (resultCode, resultPath, context, children) -> complete(future, resultCode, resultPath, children), null);
+        return future;
+    }
+
+    /**
+     * @param watcher null for none
+     */
+    public CompletableFuture<byte[]> getData(String path, Watcher watcher) {
+        CompletableFuture<byte[]> future = new CompletableFuture<>();
+        zooKeeper.getData(path, watcher,
+                (resultCode, resultPath, context, data, stat) -> complete(future, resultCode, resultPath, data), null);
+        return future;
+    }
+
+    /**
+     * @param version the version the node must have, -1 for any
+     */
+    public CompletableFuture<Stat> setData(String path, byte[] data, int version) {
+        CompletableFuture<Stat> future = new CompletableFuture<>();
+        zooKeeper.setData(path, data, version,
+                (resultCode, resultPath, context, stat) -> complete(future, resultCode, resultPath, stat), null);
+        return future;
+    }
+
+    /**
+     * Waits for a future of this class, for the callers that still want the blocking API. Never call it on
+     * ZooKeeper's event thread, which is the one that would complete the future.
+     *
+     * @throws KeeperException the error ZooKeeper answered with
+     */
+    public static <T> T await(CompletableFuture<T> future) throws KeeperException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof KeeperException keeperException) {
+                throw keeperException;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static <T> void complete(CompletableFuture<T> future, int resultCode, String path, T result) {
+        if (resultCode == KeeperException.Code.OK.intValue()) {
+            future.complete(result);
+        } else {
+            future.completeExceptionally(KeeperException.create(KeeperException.Code.get(resultCode), path));
+        }
+    }
+
+    private static class WatchThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadNumber = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "zookeeper-watch-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
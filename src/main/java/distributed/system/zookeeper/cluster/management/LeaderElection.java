@@ -1,68 +1,299 @@
 package distributed.system.zookeeper.cluster.management;
 
+import distributed.system.networking.MetricsSource;
+import distributed.system.networking.MetricsWriter;
 import org.apache.zookeeper.*;
 import org.apache.zookeeper.data.Stat;
 
+import java.time.Duration;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
 
-public class LeaderElection implements Watcher {
+/**
+ * Elects the node with the smallest sequential znode under {@value #ELECTION_NAMESPACE} as the leader. Every other
+ * node watches the znode just before its own, so a failure only wakes up the node that has to take over.
+ * <p>
+ * The reads are asynchronous, and the callbacks, which start servers and register addresses, run on the watch
+ * executor of the {@link AsyncZooKeeper} rather than on ZooKeeper's event thread.
+ * <p>
+ * A node that takes over from a leader records how long each step took: from the watch on the predecessor's znode
+ * firing, once its session expired or it resigned, to this node being elected, and to
+ * {@link OnElectionCallback#onElectedToBeLeader} returning, when it serves as the leader. A crashed leader is only
+ * noticed once its session times out, which only a {@link #resign()} on shutdown avoids.
+ * <p>
+ * How long that took is measured with a heartbeat: the leader touches its znode every heartbeat interval, and the
+ * node watching it records the modification time of the last touch. The time from that touch to the watch firing
+ * bounds the time from the leader going quiet to this node hearing of it from above, by at most one heartbeat
+ * interval. The modification time is from the ZooKeeper server's clock, so the bound is only as good as the clocks
+ * agree.
+ */
+public class LeaderElection implements Watcher, MetricsSource {
     private static final String ELECTION_NAMESPACE = "/election";
-    private String currentZnodeName;
-    private final ZooKeeper zooKeeper;
+    private static final long RESIGN_TIMEOUT_MILLIS = 2000;
+    public static final Duration DEFAULT_HEARTBEAT_INTERVAL = Duration.ofMillis(500);
+    // Heartbeats are a single asynchronous write, so one thread serves every election in the JVM
+    private static final ScheduledExecutorService HEARTBEAT_SCHEDULER = Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+                Thread thread = new Thread(runnable, "leader-heartbeat");
+                thread.setDaemon(true);
+                return thread;
+            });
+    private volatile String currentZnodeName;
+    private final AsyncZooKeeper zooKeeper;
+    private final Watcher predecessorWatcher;
     private OnElectionCallback onElectionCallback;
+    private final Duration heartbeatInterval;
+    private volatile ScheduledFuture<?> heartbeat;
+    // The znode this node watches, and the modification time of its last heartbeat, 0 if it never sent one
+    private volatile String predecessorPath;
+    private volatile long predecessorHeartbeatMillis;
+    // System.currentTimeMillis() when the watch on the predecessor fired, and its last heartbeat then
+    private volatile long watchFiredMillis;
+    private volatile long watchFiredHeartbeatMillis;
+    // System.nanoTime() of the steps of the last takeover, 0 before any
+    private volatile long watchFiredNanos;
+    private volatile long electedNanos;
+    private volatile long servingNanos;
+    // From the predecessor's last heartbeat to its watch firing in the last takeover, -1 if it never sent one
+    private volatile long detectMillis = -1;
+    private final LongAdder takeovers = new LongAdder();
 
     public LeaderElection(ZooKeeper zooKeeper, OnElectionCallback onElectionCallback) {
+        this(new AsyncZooKeeper(zooKeeper), onElectionCallback);
+    }
+
+    public LeaderElection(AsyncZooKeeper zooKeeper, OnElectionCallback onElectionCallback) {
+        this(zooKeeper, onElectionCallback, DEFAULT_HEARTBEAT_INTERVAL);
+    }
+
+    /**
+     * @param heartbeatInterval how often this node touches its znode while it is the leader
+     */
+    public LeaderElection(AsyncZooKeeper zooKeeper, OnElectionCallback onElectionCallback, Duration heartbeatInterval) {
         this.zooKeeper = zooKeeper;
         this.onElectionCallback = onElectionCallback;
+        this.heartbeatInterval = heartbeatInterval;
+        this.predecessorWatcher = zooKeeper.onWatchExecutor(this);
     }
 
     public void volunteerForLeadership() throws KeeperException, InterruptedException {
-        String znodePrefix = ELECTION_NAMESPACE + "/c_";
-        String znodeFullPath = zooKeeper.create(znodePrefix,
-                new byte[]{},
-                ZooDefs.Ids.OPEN_ACL_UNSAFE,
-                CreateMode.EPHEMERAL_SEQUENTIAL);
+        AsyncZooKeeper.await(volunteerForLeadershipAsync());
+    }
 
-        System.out.println("znode name " + znodeFullPath);
-        this.currentZnodeName = znodeFullPath.replace(ELECTION_NAMESPACE + "/", "");
+    public CompletableFuture<Void> volunteerForLeadershipAsync() {
+        String znodePrefix = ELECTION_NAMESPACE + "/c_";
+        return zooKeeper.create(znodePrefix, new byte[]{}, CreateMode.EPHEMERAL_SEQUENTIAL).thenAccept(znodeFullPath -> {
+            System.out.println("znode name " + znodeFullPath);
+            this.currentZnodeName = znodeFullPath.replace(ELECTION_NAMESPACE + "/", "");
+        });
     }
 
     public void reelectLeader() throws KeeperException, InterruptedException {
-        Stat predecessorStat = null;
-        String predecessorZnodeName = "";
-        while (predecessorStat == null) {
-            List<String> children = zooKeeper.getChildren(ELECTION_NAMESPACE, false);
-
-            Collections.sort(children);
-            String smallestChild = children.get(0);
-
-            if (smallestChild.equals(currentZnodeName)) {
-                System.out.println("I am the leader");
-                onElectionCallback.onElectedToBeLeader();
-                return;
-            } else {
-                System.out.println("I am not the leader");
-                int predecessorIndex = Collections.binarySearch(children, currentZnodeName) - 1;
-                predecessorZnodeName = children.get(predecessorIndex);
-                predecessorStat = zooKeeper.exists(ELECTION_NAMESPACE + "/" + predecessorZnodeName, this);
+        AsyncZooKeeper.await(reelectLeaderAsync());
+    }
+
+    /**
+     * @return a future completed once this node either became the leader or watches its predecessor
+     */
+    public CompletableFuture<Void> reelectLeaderAsync() {
+        return zooKeeper.getChildren(ELECTION_NAMESPACE, null)
+                .thenComposeAsync(this::onElectionChildren, zooKeeper.getWatchExecutor());
+    }
+
+    /**
+     * Leaves the election by deleting this node's znode, so the next node takes over as soon as it hears about it,
+     * instead of after this node's session times out. Waits at most {@value #RESIGN_TIMEOUT_MILLIS} ms, since it
+     * is meant to run on shutdown.
+     */
+    public void resign() {
+        try {
+            resignAsync().get(RESIGN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            System.out.println("Could not resign from the election: " + e.getMessage());
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public CompletableFuture<Void> resignAsync() {
+        String znodeName = currentZnodeName;
+        if (znodeName == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        // Also keeps a watch that fires later from electing this node again
+        currentZnodeName = null;
+        stopHeartbeat();
+        System.out.println("Resigning from the election");
+        return zooKeeper.delete(ELECTION_NAMESPACE + "/" + znodeName, -1).thenApply(deleted -> null);
+    }
+
+    /**
+     * @return the System.nanoTime() at which this node heard that the predecessor of the last takeover left, 0 if
+     * this node never took over from another leader
+     */
+    public long getWatchFiredNanos() {
+        return watchFiredNanos;
+    }
+
+    public long getElectedNanos() {
+        return electedNanos;
+    }
+
+    public long getServingNanos() {
+        return servingNanos;
+    }
+
+    /**
+     * @return the milliseconds from the last heartbeat of the leader this node took over from to the watch on its
+     * znode firing, an upper bound on how long the leader had been gone by one heartbeat interval; -1 if this node
+     * never took over from a leader that sent one
+     */
+    public long getDetectMillis() {
+        return detectMillis;
+    }
+
+    @Override
+    public void writeMetrics(MetricsWriter writer) {
+        writer.counter("leader_election_takeovers_total", "Times this node took over from another leader",
+                takeovers.sum());
+        if (takeovers.sum() == 0) {
+            return;
+        }
+        writer.family("leader_election_takeover_seconds", "gauge", "Steps of the last takeover by this node");
+        if (detectMillis >= 0) {
+            writer.sample("leader_election_takeover_seconds", "step", "detect", detectMillis / 1e3);
+        }
+        writer.sample("leader_election_takeover_seconds", "step", "elect",
+                (electedNanos - watchFiredNanos) / 1e9);
+        writer.sample("leader_election_takeover_seconds", "step", "serve", (servingNanos - electedNanos) / 1e9);
+    }
+
+    private CompletableFuture<Void> onElectionChildren(List<String> children) {
+        String znodeName = currentZnodeName;
+        if (znodeName == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        Collections.sort(children);
+        String smallestChild = children.get(0);
+
+        if (smallestChild.equals(znodeName)) {
+            long elected = System.nanoTime();
+            System.out.println("I am the leader");
+            predecessorPath = null;
+            startHeartbeat();
+            onElectionCallback.onElectedToBeLeader();
+            long serving = System.nanoTime();
+            long watchFired = watchFiredNanos;
+            if (watchFired != 0) {
+                long lastHeartbeat = watchFiredHeartbeatMillis;
+                this.detectMillis = lastHeartbeat == 0 ? -1 : watchFiredMillis - lastHeartbeat;
+                this.electedNanos = elected;
+                this.servingNanos = serving;
+                takeovers.increment();
+                System.out.println(String.format("Took over as the leader %.1f ms after the predecessor's watch fired: "
+                                + "elected in %.1f ms, serving %.1f ms later, the watch fired %d ms after its last "
+                                + "heartbeat", (serving - watchFired) / 1e6, (elected - watchFired) / 1e6,
+                        (serving - elected) / 1e6, detectMillis));
             }
+            return CompletableFuture.completedFuture(null);
         }
-        onElectionCallback.onWorker();
-        System.out.println("Watching znode " + predecessorZnodeName);
-        System.out.println();
+        System.out.println("I am not the leader");
+        int predecessorIndex = Collections.binarySearch(children, znodeName) - 1;
+        String predecessorZnodeName = children.get(predecessorIndex);
+        String predecessorPath = ELECTION_NAMESPACE + "/" + predecessorZnodeName;
+        this.predecessorPath = predecessorPath;
+        this.predecessorHeartbeatMillis = 0;
+        return zooKeeper.exists(predecessorPath, predecessorWatcher)
+                .thenComposeAsync(predecessorStat -> {
+                    // The predecessor left between the two reads, look again
+                    if (predecessorStat == null) {
+                        return reelectLeaderAsync();
+                    }
+                    recordHeartbeat(predecessorStat);
+                    onElectionCallback.onWorker();
+                    System.out.println("Watching znode " + predecessorZnodeName);
+                    System.out.println();
+                    return CompletableFuture.completedFuture(null);
+                }, zooKeeper.getWatchExecutor());
+    }
+
+    private void startHeartbeat() {
+        stopHeartbeat();
+        long intervalMillis = heartbeatInterval.toMillis();
+        heartbeat = HEARTBEAT_SCHEDULER.scheduleWithFixedDelay(this::sendHeartbeat, intervalMillis, intervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    private void stopHeartbeat() {
+        ScheduledFuture<?> heartbeat = this.heartbeat;
+        if (heartbeat != null) {
+            heartbeat.cancel(false);
+        }
+    }
+
+    private void sendHeartbeat() {
+        String znodeName = currentZnodeName;
+        if (znodeName == null) {
+            stopHeartbeat();
+            return;
+        }
+        zooKeeper.setData(ELECTION_NAMESPACE + "/" + znodeName, new byte[]{}, -1).exceptionally(e -> {
+            // The session is gone, and with it the znode and the leadership
+            System.out.println("Could not send a heartbeat, stopping: " + e.getMessage());
+            stopHeartbeat();
+            return null;
+        });
+    }
+
+    /**
+     * The znode's modification time is its creation time until the first heartbeat
+     */
+    private void recordHeartbeat(Stat predecessorStat) {
+        if (predecessorStat.getVersion() > 0) {
+            predecessorHeartbeatMillis = predecessorStat.getMtime();
+        }
+    }
+
+    private void onPredecessorLeft() {
+        watchFiredNanos = System.nanoTime();
+        watchFiredMillis = System.currentTimeMillis();
+        watchFiredHeartbeatMillis = predecessorHeartbeatMillis;
+        reelectLeaderAsync().exceptionally(e -> {
+            System.out.println("Could not re-elect a leader: " + e.getMessage());
+            return null;
+        });
     }
 
     @Override
     public void process(WatchedEvent event) {
         switch (event.getType()) {
             case NodeDeleted:
-                try {
-                    reelectLeader();
-                } catch (InterruptedException e) {
-                } catch (KeeperException e) {
+                onPredecessorLeft();
+                break;
+            case NodeDataChanged:
+                // A heartbeat, the watch has to be set again to keep watching
+                String path = event.getPath();
+                if (!path.equals(predecessorPath)) {
+                    return;
                 }
+                zooKeeper.exists(path, predecessorWatcher).thenAccept(predecessorStat -> {
+                    if (predecessorStat == null) {
+                        onPredecessorLeft();
+                    } else {
+                        recordHeartbeat(predecessorStat);
+                    }
+                }).exceptionally(e -> {
+                    System.out.println("Could not watch the predecessor again: " + e.getMessage());
+                    return null;
+                });
         }
     }
 }
-
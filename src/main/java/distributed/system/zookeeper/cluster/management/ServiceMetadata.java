@@ -0,0 +1,183 @@
+package distributed.system.zookeeper.cluster.management;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * What a node publishes about itself in a {@link ServiceRegistry}: its address, how many tasks it can work on at the
+ * same time, how busy it currently is, whether it is turning requests away, and the shards it owns.
+ * <p>
+ * It is stored as UTF-8 {@code key=value} lines so it can be read with the ZooKeeper CLI:
+ * <pre>
+ * version=1
+ * address=http://worker-1:8080/task
+ * capacity=8
+ * load=0.25
+ * saturated=false
+ * shards=books-a,books-b
+ * </pre>
+ * Data without a {@code version} line is a bare address, as registered by {@link ServiceRegistry#registerToCluster(String)}.
+ */
+public class ServiceMetadata {
+    public static final int FORMAT_VERSION = 1;
+    public static final int DEFAULT_CAPACITY = 1;
+
+    private final String address;
+    private final int capacity;
+    private final double load;
+    private final boolean saturated;
+    private final List<String> shards;
+    private final int version;
+
+    /**
+     * @param capacity the tasks the node can work on at the same time, usually its cores
+     * @param load     the fraction of the capacity in use, 0 when idle; rounded to 2 decimals
+     * @param shards   the shards the node owns, empty if it can serve any document
+     */
+    public ServiceMetadata(String address, int capacity, double load, List<String> shards) {
+        this(address, capacity, load, false, shards, FORMAT_VERSION);
+    }
+
+    private ServiceMetadata(String address, int capacity, double load, boolean saturated, List<String> shards,
+                            int version) {
+        this.address = address;
+        this.capacity = Math.max(1, capacity);
+        this.load = Math.max(0, Math.round(load * 100) / 100.0);
+        this.saturated = saturated;
+        this.shards = List.copyOf(shards);
+        this.version = version;
+    }
+
+    /**
+     * @return the metadata of a node that only published its address
+     */
+    public static ServiceMetadata of(String address) {
+        return new ServiceMetadata(address, DEFAULT_CAPACITY, 0, false, List.of(), 0);
+    }
+
+    public ServiceMetadata withAddress(String address) {
+        return new ServiceMetadata(address, capacity, load, saturated, shards, version);
+    }
+
+    public ServiceMetadata withLoad(double load) {
+        return new ServiceMetadata(address, capacity, load, saturated, shards, version);
+    }
+
+    public ServiceMetadata withSaturated(boolean saturated) {
+        return new ServiceMetadata(address, capacity, load, saturated, shards, version);
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public double getLoad() {
+        return load;
+    }
+
+    /**
+     * @return true if the node recently turned requests away because it was overloaded
+     */
+    public boolean isSaturated() {
+        return saturated;
+    }
+
+    public List<String> getShards() {
+        return shards;
+    }
+
+    /**
+     * @return the format version the node wrote, 0 for a bare address
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    public byte[] encode() {
+        return String.format(Locale.ROOT, "version=%d\naddress=%s\ncapacity=%d\nload=%.2f\nsaturated=%b\n"
+                        + "shards=%s\n", FORMAT_VERSION, address, capacity, load, saturated, String.join(",", shards)).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Unknown keys are skipped, so a newer node may add some
+     *
+     * @throws IllegalArgumentException if a value cannot be parsed
+     */
+    public static ServiceMetadata decode(byte[] data) {
+        String text = new String(data, StandardCharsets.UTF_8);
+        if (!text.startsWith("version=")) {
+            return of(text.trim());
+        }
+        String address = null;
+        int capacity = DEFAULT_CAPACITY;
+        double load = 0;
+        boolean saturated = false;
+        List<String> shards = List.of();
+        int version = 0;
+        for (String line : text.split("\n")) {
+            int separator = line.indexOf('=');
+            if (separator < 0) {
+                continue;
+            }
+            String value = line.substring(separator + 1).trim();
+            switch (line.substring(0, separator).trim()) {
+                case "version":
+                    version = Integer.parseInt(value);
+                    break;
+                case "address":
+                    address = value;
+                    break;
+                case "capacity":
+                    capacity = Integer.parseInt(value);
+                    break;
+                case "load":
+                    load = Double.parseDouble(value);
+                    break;
+                case "saturated":
+                    saturated = Boolean.parseBoolean(value);
+                    break;
+                case "shards":
+                    shards = value.isEmpty() ? List.of() : Arrays.asList(value.split(","));
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (address == null) {
+            throw new IllegalArgumentException("No address in the service metadata");
+        }
+        return new ServiceMetadata(address, capacity, load, saturated, shards, version);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof ServiceMetadata)) {
+            return false;
+        }
+        ServiceMetadata metadata = (ServiceMetadata) other;
+        return capacity == metadata.capacity && load == metadata.load && saturated == metadata.saturated
+                && version == metadata.version
+                && Objects.equals(address, metadata.address) && shards.equals(metadata.shards);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(address, capacity, load, saturated, shards, version);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%s (capacity %d, load %.2f%s, shards %s)", address, capacity, load,
+                saturated ? ", saturated" : "", shards);
+    }
+}
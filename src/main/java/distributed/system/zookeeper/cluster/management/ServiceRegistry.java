@@ -1,49 +1,120 @@
 package distributed.system.zookeeper.cluster.management;
 
+import distributed.system.networking.MetricsSource;
+import distributed.system.networking.MetricsWriter;
 import org.apache.zookeeper.*;
-import org.apache.zookeeper.data.Stat;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
 
-public class ServiceRegistry implements Watcher {
+/**
+ * Registers this node's address, or its {@link ServiceMetadata}, under a registry znode, and keeps a cache of the
+ * metadata of all the nodes registered there.
+ * <p>
+ * The cache is updated from a children watch and a data watch on every child, with asynchronous reads. Every change
+ * of the children reads the list of children, and only the data of the children that were not known yet, all sent
+ * at once; a change of a child's metadata only reads that child. Readers get an immutable snapshot
+ * through a volatile field and never wait for ZooKeeper, except for the very first read. The watch is handled on the
+ * watch executor of the {@link AsyncZooKeeper}, and the replies on ZooKeeper's event thread, where they never block.
+ */
+public class ServiceRegistry implements Watcher, MetricsSource {
     public static final String WORKERS_REGISTRY_ZNODE = "/workers_service_registry";
     public static final String COORDINATORS_REGISTRY_ZNODE = "/coordinators_service_registry";
-    private final ZooKeeper zooKeeper;
-    private List<String> allServiceAddresses = null;
-    private String currentZnode = null;
+    private static final long FIRST_UPDATE_TIMEOUT_MILLIS = 5000;
+    // Every node watching the registry reads a node's metadata each time it changes, so this node writes it at most
+    // this often, however often it is asked to
+    private static final long MIN_METADATA_UPDATE_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    private final AsyncZooKeeper zooKeeper;
+    private final Watcher registryWatcher;
+    private volatile List<ServiceMetadata> allServiceMetadata = null;
+    private volatile List<String> allServiceAddresses = null;
+    private final CompletableFuture<Void> firstUpdate = new CompletableFuture<>();
+    private volatile String currentZnode = null;
     private final String serviceRegistryZnode;
+    // Orders the replies to the reads of the children, see onChildren; only used under the registry's lock
+    private long childrenReadsSent;
+    private long latestChildrenRead;
+    private final Map<String, ServiceMetadata> childToMetadata = new TreeMap<>();
+    private final Set<String> latestChildren = new HashSet<>();
+    // Children whose data is read for the first time; a list is only published once they are all in it
+    private final Set<String> newChildrenBeingRead = new HashSet<>();
+    // Set when a read failed, so the next reader tries again instead of keeping a stale cache forever
+    private volatile boolean stale = true;
+    private final LongAdder childrenReads = new LongAdder();
+    private final LongAdder dataReads = new LongAdder();
+    private final LongAdder updates = new LongAdder();
+    // Only used by updateMetadata, under the registry's lock
+    private byte[] writtenMetadata;
+    private long metadataWrittenNanos;
+    private final LongAdder metadataWrites = new LongAdder();
 
     public ServiceRegistry(ZooKeeper zooKeeper, String serviceRegistryZnode) {
+        this(new AsyncZooKeeper(zooKeeper), serviceRegistryZnode);
+    }
+
+    public ServiceRegistry(AsyncZooKeeper zooKeeper, String serviceRegistryZnode) {
         this.zooKeeper = zooKeeper;
         this.serviceRegistryZnode = serviceRegistryZnode;
+        this.registryWatcher = zooKeeper.onWatchExecutor(this);
         createServiceRegistryNode();
     }
 
+    /**
+     * Registers a bare address, which readers see as {@link ServiceMetadata#of(String)}
+     */
     public void registerToCluster(String metadata) throws KeeperException, InterruptedException {
+        AsyncZooKeeper.await(registerToClusterAsync(metadata.getBytes()));
+    }
+
+    public void registerToCluster(ServiceMetadata metadata) throws KeeperException, InterruptedException {
+        AsyncZooKeeper.await(registerToClusterAsync(metadata));
+    }
+
+    /**
+     * @return a future of the znode this node registered as
+     */
+    public CompletableFuture<String> registerToClusterAsync(ServiceMetadata metadata) {
+        byte[] data = metadata.encode();
+        synchronized (this) {
+            writtenMetadata = data;
+            metadataWrittenNanos = System.nanoTime();
+        }
+        return registerToClusterAsync(data);
+    }
+
+    private CompletableFuture<String> registerToClusterAsync(byte[] data) {
         if (currentZnode != null) {
             System.out.println("Already registered to service registry");
-            return;
+            return CompletableFuture.completedFuture(currentZnode);
         }
-        this.currentZnode = zooKeeper.create(serviceRegistryZnode + "/n_", metadata.getBytes(),
-                ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL_SEQUENTIAL);
-        System.out.println("Registered to service registry");
+        return zooKeeper.create(serviceRegistryZnode + "/n_", data, CreateMode.EPHEMERAL_SEQUENTIAL)
+                .thenApply(znode -> {
+                    this.currentZnode = znode;
+                    System.out.println("Registered to service registry");
+                    return znode;
+                });
     }
 
+    /**
+     * Starts watching the registry, without waiting for the first addresses
+     */
     public void registerForUpdates() {
-        try {
-            updateAddresses();
-        } catch (KeeperException e) {
-        } catch (InterruptedException e) {
-        }
+        updateAddresses();
     }
 
     public void unregisterFromCluster() {
         try {
-            if (currentZnode != null && zooKeeper.exists(currentZnode, false) != null) {
-                zooKeeper.delete(currentZnode, -1);
-            }
+            AsyncZooKeeper.await(unregisterFromClusterAsync());
         } catch (KeeperException e) {
             e.printStackTrace();
         } catch (InterruptedException e) {
@@ -51,11 +122,43 @@ public class ServiceRegistry implements Watcher {
         }
     }
 
+    public CompletableFuture<Void> unregisterFromClusterAsync() {
+        String znode = currentZnode;
+        if (znode == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        // So that the node can register again later
+        currentZnode = null;
+        // A node that is already gone is fine, so there is no need to check first
+        return zooKeeper.delete(znode, -1).thenApply(deleted -> null);
+    }
+
+    /**
+     * Replaces the metadata of this node, unless it did not change or was already replaced less than half a second
+     * ago. Meant to be called periodically, so a skipped change is written by a later call.
+     *
+     * @return whether the metadata is being written
+     */
+    public synchronized boolean updateMetadata(ServiceMetadata metadata) {
+        String znode = currentZnode;
+        byte[] data = metadata.encode();
+        long now = System.nanoTime();
+        if (znode == null || Arrays.equals(data, writtenMetadata) || now - metadataWrittenNanos < MIN_METADATA_UPDATE_NANOS) {
+            return false;
+        }
+        writtenMetadata = data;
+        metadataWrittenNanos = now;
+        metadataWrites.increment();
+        zooKeeper.setData(znode, data, -1).exceptionally(e -> {
+            System.out.println("Could not update the metadata in the service registry: " + e.getMessage());
+            return null;
+        });
+        return true;
+    }
+
     private void createServiceRegistryNode() {
         try {
-            if (zooKeeper.exists(serviceRegistryZnode, false) == null) {
-                zooKeeper.create(serviceRegistryZnode, new byte[]{}, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
-            }
+            AsyncZooKeeper.await(zooKeeper.createIfMissing(serviceRegistryZnode, CreateMode.PERSISTENT));
         } catch (InterruptedException e) {
             e.printStackTrace();
         } catch (KeeperException e) {
@@ -63,40 +166,177 @@ public class ServiceRegistry implements Watcher {
         }
     }
 
-    public synchronized List<String> getAllServiceAddresses() throws KeeperException, InterruptedException {
-        if (allServiceAddresses == null) {
+    /**
+     * @return the addresses of all the registered nodes, in the order they registered. Only the first call waits
+     * for ZooKeeper, and starts watching the registry if {@link #registerForUpdates()} was not called.
+     */
+    public List<String> getAllServiceAddresses() throws KeeperException, InterruptedException {
+        awaitCache();
+        return allServiceAddresses;
+    }
+
+    /**
+     * @return the metadata of all the registered nodes, in the order they registered, as of their last update.
+     * Only the first call waits for ZooKeeper, like {@link #getAllServiceAddresses()}.
+     */
+    public List<ServiceMetadata> getAllServiceMetadata() throws KeeperException, InterruptedException {
+        awaitCache();
+        return allServiceMetadata;
+    }
+
+    private void awaitCache() throws KeeperException, InterruptedException {
+        if (stale) {
             updateAddresses();
         }
-        return allServiceAddresses;
+        if (firstUpdate.isDone()) {
+            return;
+        }
+        try {
+            firstUpdate.get(FIRST_UPDATE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            throw KeeperException.create(KeeperException.Code.OPERATIONTIMEOUT, serviceRegistryZnode);
+        }
     }
 
-    private synchronized void updateAddresses() throws KeeperException, InterruptedException {
-        List<String> workers = zooKeeper.getChildren(serviceRegistryZnode, this);
+    public long getChildrenReadCount() {
+        return childrenReads.sum();
+    }
 
-        List<String> addresses = new ArrayList<>(workers.size());
+    public long getDataReadCount() {
+        return dataReads.sum();
+    }
+
+    /**
+     * @return how many times a new list of metadata was published
+     */
+    public long getUpdateCount() {
+        return updates.sum();
+    }
 
-        for (String worker : workers) {
-            String serviceFullpath = serviceRegistryZnode + "/" + worker;
-            Stat stat = zooKeeper.exists(serviceFullpath, false);
-            if (stat == null) {
-                continue;
+    @Override
+    public void writeMetrics(MetricsWriter writer) {
+        writer.family("service_registry_addresses", "gauge", "Nodes in the cached registry");
+        writer.sample("service_registry_addresses", "registry", serviceRegistryZnode,
+                allServiceAddresses == null ? 0 : allServiceAddresses.size());
+        writer.family("service_registry_updates_total", "counter", "Changes of the cached registry");
+        writer.sample("service_registry_updates_total", "registry", serviceRegistryZnode, updates.sum());
+        writer.family("service_registry_reads_total", "counter", "Reads sent to ZooKeeper to update the cache");
+        writer.sample("service_registry_reads_total", "registry", serviceRegistryZnode, "read", "children",
+                childrenReads.sum());
+        writer.sample("service_registry_reads_total", "registry", serviceRegistryZnode, "read", "data", dataReads.sum());
+        writer.family("service_registry_metadata_writes_total", "counter", "Updates of this node's metadata");
+        writer.sample("service_registry_metadata_writes_total", "registry", serviceRegistryZnode, metadataWrites.sum());
+    }
+
+    /**
+     * Numbers the read and sends it under the registry's lock, so the reads reach ZooKeeper, which answers a session's
+     * requests in order, in the order of their numbers even when watch events are handled on several threads
+     */
+    private synchronized void updateAddresses() {
+        stale = false;
+        long read = ++childrenReadsSent;
+        zooKeeper.getChildren(serviceRegistryZnode, registryWatcher)
+                .whenComplete((children, error) -> onChildren(read, children, error));
+    }
+
+    private synchronized void onChildren(long read, List<String> children, Throwable error) {
+        childrenReads.increment();
+        if (error != null) {
+            onReadFailed(error);
+            return;
+        }
+        // A reply that was already complete when its handler was attached runs on the thread that sent the read,
+        // and may come after the reply to a later read, which it must not undo
+        if (read < latestChildrenRead) {
+            return;
+        }
+        latestChildrenRead = read;
+
+        latestChildren.clear();
+        latestChildren.addAll(children);
+        boolean removed = childToMetadata.keySet().retainAll(latestChildren);
+        for (String child : children) {
+            if (!childToMetadata.containsKey(child) && newChildrenBeingRead.add(child)) {
+                // Sent back to back, so all the reads take about one round trip
+                readData(child);
             }
+        }
+        // Departed nodes are dropped straight away, new ones once all their data has been read
+        if (removed || newChildrenBeingRead.isEmpty()) {
+            publishMetadata();
+        }
+    }
 
-            byte[] addressBytes = zooKeeper.getData(serviceFullpath, false, stat);
-            String address = new String(addressBytes);
-            addresses.add(address);
+    private synchronized void onDataChanged(String child) {
+        if (latestChildren.contains(child)) {
+            readData(child);
         }
+    }
 
-        this.allServiceAddresses = Collections.unmodifiableList(addresses);
-        System.out.println("The cluster addresses are: " + this.allServiceAddresses);
+    private void readData(String child) {
+        // Also sets the data watch, or keeps the one already set since the watcher is the same
+        zooKeeper.getData(serviceRegistryZnode + "/" + child, registryWatcher)
+                .whenComplete((data, error) -> onData(child, data, error));
+    }
+
+    private synchronized void onData(String child, byte[] data, Throwable error) {
+        dataReads.increment();
+        newChildrenBeingRead.remove(child);
+        if (error == null) {
+            // A node may have left while its data was read
+            if (latestChildren.contains(child)) {
+                try {
+                    childToMetadata.put(child, ServiceMetadata.decode(data));
+                } catch (IllegalArgumentException e) {
+                    System.out.println(String.format("Skipping %s, its metadata cannot be read: %s", child, e.getMessage()));
+                }
+            }
+        } else if (!(error instanceof KeeperException.NoNodeException)) {
+            onReadFailed(error);
+        }
+        // A change of a known node's metadata is published straight away, unless nodes that just joined are still
+        // being read, in which case it is published with them a round trip later
+        if (newChildrenBeingRead.isEmpty()) {
+            publishMetadata();
+        }
+    }
+
+    private void onReadFailed(Throwable error) {
+        System.out.println("Could not read the service registry: " + error.getMessage());
+        stale = true;
+    }
+
+    private void publishMetadata() {
+        List<ServiceMetadata> metadata = List.copyOf(childToMetadata.values());
+        if (metadata.equals(allServiceMetadata)) {
+            return;
+        }
+        List<String> addresses = metadata.stream().map(ServiceMetadata::getAddress).collect(Collectors.toUnmodifiableList());
+        this.allServiceMetadata = metadata;
+        updates.increment();
+        // Most updates are only a node's load changing
+        if (!addresses.equals(allServiceAddresses)) {
+            this.allServiceAddresses = addresses;
+            System.out.println("The cluster addresses are: " + addresses);
+        }
+        firstUpdate.complete(null);
     }
 
     @Override
     public void process(WatchedEvent event) {
-        try {
-            updateAddresses();
-        } catch (KeeperException e) {
-        } catch (InterruptedException e) {
+        switch (event.getType()) {
+            case NodeChildrenChanged:
+                updateAddresses();
+                break;
+            case NodeDataChanged:
+                onDataChanged(event.getPath().substring(serviceRegistryZnode.length() + 1));
+                break;
+            case None:
+                // Watches are restored by ZooKeeper after a reconnection, but a read that failed has none to restore
+                if (event.getState() == Event.KeeperState.SyncConnected && stale) {
+                    updateAddresses();
+                }
+                break;
         }
     }
 }
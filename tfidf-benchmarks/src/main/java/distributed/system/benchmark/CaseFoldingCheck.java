@@ -0,0 +1,79 @@
+package distributed.system.benchmark;
+
+import distributed.system.tfidf.model.DocumentData;
+import distributed.system.tfidf.search.TFIDF;
+import distributed.system.tfidf.search.TermCounter;
+import distributed.system.tfidf.search.Tokenizer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Verifies that every way of counting terms folds case like the per term {@link String#equalsIgnoreCase} count
+ * TFIDF.createDocumentData used to run: counting the words of a document in one pass, and tokenizing and counting
+ * the document like a worker does. The words are drawn from letters whose case mappings disagree between lower
+ * casing and comparing ignoring case, such as 'ı', 'İ', 'ſ', the final sigma and the Kelvin sign.
+ * Usage: CaseFoldingCheck [documents]
+ */
+public class CaseFoldingCheck {
+    private static final String[] LETTERS = {"i", "I", "ı", "İ", "s", "S", "ſ", "σ", "Σ", "ς", "k", "K", "K",
+            "ß", "ẞ", "ǆ", "ǅ", "Ǆ", "é", "É", "𐐀", "𐐨", "a", "A"};
+    private static final int WORDS_PER_DOCUMENT = 2_000;
+    private static final int TERMS_PER_QUERY = 6;
+
+    public static void main(String[] args) {
+        int documents = args.length >= 1 ? Integer.parseInt(args[0]) : 500;
+        Random random = new Random(23);
+
+        int failures = 0;
+        for (int document = 0; document < documents; document++) {
+            List<String> words = new ArrayList<>(WORDS_PER_DOCUMENT);
+            for (int i = 0; i < WORDS_PER_DOCUMENT; i++) {
+                words.add(randomWord(random));
+            }
+            List<String> terms = new ArrayList<>(TERMS_PER_QUERY);
+            for (int i = 0; i < TERMS_PER_QUERY; i++) {
+                terms.add(random.nextBoolean() ? words.get(random.nextInt(words.size())) : randomWord(random));
+            }
+
+            DocumentData counted = TFIDF.createDocumentData(words, terms);
+            TermCounter termCounter = new TermCounter(terms);
+            new Tokenizer().tokenize(String.join(" ", words), termCounter);
+            DocumentData tokenized = TFIDF.createDocumentData(termCounter, terms);
+            for (String term : terms) {
+                double expected = (double) countIgnoringCase(words, term) / words.size();
+                if (counted.getFrequency(term) != expected || tokenized.getFrequency(term) != expected) {
+                    System.out.println(String.format("Term %s: counted %f, tokenized %f, expected %f", term,
+                            counted.getFrequency(term), tokenized.getFrequency(term), expected));
+                    failures++;
+                }
+            }
+        }
+
+        if (failures > 0) {
+            System.out.println(String.format("%d mismatches", failures));
+            System.exit(1);
+        }
+        System.out.println(String.format("Term counts of %d documents match comparing ignoring case", documents));
+    }
+
+    private static long countIgnoringCase(List<String> words, String term) {
+        long count = 0;
+        for (String word : words) {
+            if (term.equalsIgnoreCase(word)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static String randomWord(Random random) {
+        StringBuilder word = new StringBuilder();
+        int length = 1 + random.nextInt(3);
+        for (int i = 0; i < length; i++) {
+            word.append(LETTERS[random.nextInt(LETTERS.length)]);
+        }
+        return word.toString();
+    }
+}
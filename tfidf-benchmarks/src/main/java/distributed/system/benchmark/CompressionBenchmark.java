@@ -0,0 +1,90 @@
+package distributed.system.benchmark;
+
+import distributed.system.networking.ContentCodec;
+import distributed.system.networking.GzipCodec;
+import distributed.system.networking.Lz4Codec;
+import distributed.system.tfidf.model.BinaryCodec;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compares the content codings a worker can compress its results with: the bytes sent, the CPU time to compress and
+ * decompress them, and what that adds up to per response on links of different speeds.
+ * Usage: CompressionBenchmark [documents per result...]
+ */
+public class CompressionBenchmark {
+    private static final int[] DOCUMENTS = {10, 100, 1_000, 10_000};
+    private static final int TERMS = 4;
+    private static final double[] LINK_GIGABITS_PER_SECOND = {0.1, 1, 10};
+    private static final long MEASURE_NANOS = 1_000_000_000L;
+
+    public static void main(String[] args) throws IOException {
+        int[] documentCounts = args.length > 0 ? Arrays.stream(args).mapToInt(Integer::parseInt).toArray() : DOCUMENTS;
+        List<ContentCodec> codecs = List.of(new Lz4Codec(), new GzipCodec(1), new GzipCodec(6));
+
+        System.out.println(String.format("%-8s %-9s %10s %10s %7s %11s %11s %11s %11s %11s", "results", "coding",
+                "bytes", "wire", "ratio", "encode(us)", "decode(us)", "100Mb(ms)", "1Gb(ms)", "10Gb(ms)"));
+        for (int documentCount : documentCounts) {
+            byte[] payload = BinaryCodec.encodeResult(SerializationBenchmark.createResult(documentCount, TERMS));
+            System.out.println(row(documentCount, "identity", payload.length, payload.length, 0, 0));
+            for (ContentCodec codec : codecs) {
+                byte[] encoded = codec.encode(payload);
+                if (!Arrays.equals(payload, codec.decode(encoded))) {
+                    throw new IllegalStateException("Round trip mismatch for " + codec.getName());
+                }
+                double encodeNanos = nanosPerOperation(() -> encode(codec, payload));
+                double decodeNanos = nanosPerOperation(() -> decode(codec, encoded));
+                String coding = codec instanceof GzipCodec gzip ? "gzip-" + gzip.getLevel() : codec.getName();
+                System.out.println(row(documentCount, coding, payload.length, encoded.length, encodeNanos, decodeNanos));
+            }
+        }
+    }
+
+    /**
+     * The time on each link is the time to compress, send and decompress one response, without latency
+     */
+    private static String row(int documentCount, String coding, int bytes, int wireBytes,
+                              double encodeNanos, double decodeNanos) {
+        StringBuilder row = new StringBuilder(String.format("%-8d %-9s %10d %10d %7.2f %11.1f %11.1f",
+                documentCount, coding, bytes, wireBytes, (double) bytes / wireBytes, encodeNanos / 1000, decodeNanos / 1000));
+        for (double gigabitsPerSecond : LINK_GIGABITS_PER_SECOND) {
+            double wireNanos = wireBytes * 8 / gigabitsPerSecond;
+            row.append(String.format(" %11.3f", (encodeNanos + wireNanos + decodeNanos) / 1_000_000));
+        }
+        return row.toString();
+    }
+
+    private static byte[] encode(ContentCodec codec, byte[] payload) {
+        try {
+            return codec.encode(payload);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] decode(ContentCodec codec, byte[] encoded) {
+        try {
+            return codec.decode(encoded);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static double nanosPerOperation(Runnable operation) {
+        for (int i = 0; i < 20; i++) {
+            operation.run();
+        }
+        long operations = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            operation.run();
+            operations++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < MEASURE_NANOS);
+        return (double) elapsed / operations;
+    }
+}
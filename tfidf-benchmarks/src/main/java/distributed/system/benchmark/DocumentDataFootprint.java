@@ -0,0 +1,74 @@
+package distributed.system.benchmark;
+
+import distributed.system.tfidf.model.DocumentData;
+
+import java.lang.ref.Reference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Heap retained by the term frequencies of a Result, comparing DocumentData with the HashMap of boxed Doubles it used to wrap.
+ * Run with a fixed heap, e.g. -Xms1g -Xmx1g, for stable numbers.
+ * Usage: DocumentDataFootprint [documents] [terms]
+ */
+public class DocumentDataFootprint {
+    private static final int DOCUMENTS = 10_000;
+    private static final int TERMS = 15;
+
+    public static void main(String[] args) {
+        int documentCount = args.length > 0 ? Integer.parseInt(args[0]) : DOCUMENTS;
+        int termCount = args.length > 1 ? Integer.parseInt(args[1]) : TERMS;
+        List<String> terms = new SyntheticCorpus(5, 20_000).terms(termCount);
+
+        long mapBytes = retainedBytes(() -> {
+            Random random = new Random(3);
+            List<Map<String, Double>> documents = new ArrayList<>(documentCount);
+            for (int i = 0; i < documentCount; i++) {
+                Map<String, Double> termToFrequency = new HashMap<>();
+                for (String term : terms) {
+                    termToFrequency.put(term, random.nextDouble());
+                }
+                documents.add(termToFrequency);
+            }
+            return documents;
+        });
+
+        long documentDataBytes = retainedBytes(() -> {
+            Random random = new Random(3);
+            List<DocumentData> documents = new ArrayList<>(documentCount);
+            for (int i = 0; i < documentCount; i++) {
+                DocumentData documentData = new DocumentData();
+                for (String term : terms) {
+                    documentData.putTermFrequency(term, random.nextDouble());
+                }
+                documents.add(documentData);
+            }
+            return documents;
+        });
+
+        System.out.println(String.format("%d documents x %d terms", documentCount, termCount));
+        System.out.println(String.format("%-24s %12s %16s", "representation", "bytes", "bytes/document"));
+        System.out.println(String.format("%-24s %12d %16d", "HashMap<String, Double>", mapBytes, mapBytes / documentCount));
+        System.out.println(String.format("%-24s %12d %16d", "DocumentData", documentDataBytes, documentDataBytes / documentCount));
+    }
+
+    private static long retainedBytes(Supplier<Object> allocation) {
+        long before = usedMemory();
+        Object retained = allocation.get();
+        long after = usedMemory();
+        Reference.reachabilityFence(retained);
+        return after - before;
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,173 @@
+package distributed.system.benchmark;
+
+import distributed.system.Aggregator;
+import distributed.system.WebClient;
+import distributed.system.networking.OnRequestCallback;
+import distributed.system.networking.WebServer;
+import distributed.system.tfidf.model.BinaryCodec;
+import distributed.system.tfidf.model.DocumentData;
+import distributed.system.tfidf.model.Result;
+import distributed.system.tfidf.model.SearchResult;
+import distributed.system.tfidf.model.Task;
+import distributed.system.tfidf.search.SearchCoordinator;
+import distributed.system.tfidf.search.ShardScheduler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Runs searches through a SearchCoordinator against local stub workers, one of which is slow on some requests
+ * or never answers, and compares the search latency with and without hedging.
+ * Usage: HedgingLoadTest [searches] [slow fraction] [slow millis]
+ */
+public class HedgingLoadTest {
+    private static final int FIRST_PORT = 18180;
+    private static final int WORKERS = 4;
+    private static final int DOCUMENTS = 32;
+    private static final int SEARCHES = 400;
+    private static final double SLOW_FRACTION = 0.1;
+    private static final int SLOW_MILLIS = 300;
+    private static final int WORKER_MILLIS = 5;
+    private static final int DEAD_WORKER_SEARCHES = 60;
+    private static final Duration DEADLINE = Duration.ofMillis(1000);
+    private static final String QUERY = "detective war winter";
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int searches = args.length > 0 ? Integer.parseInt(args[0]) : SEARCHES;
+        double slowFraction = args.length > 1 ? Double.parseDouble(args[1]) : SLOW_FRACTION;
+        int slowMillis = args.length > 2 ? Integer.parseInt(args[2]) : SLOW_MILLIS;
+
+        Path documentsDirectory = Files.createTempDirectory("hedging-documents");
+        for (int i = 0; i < DOCUMENTS; i++) {
+            Files.createFile(documentsDirectory.resolve(String.format("book-%02d.txt", i)));
+        }
+
+        List<WebServer> webServers = new ArrayList<>();
+        List<String> workerAddresses = new ArrayList<>();
+        StubWorker slowWorker = null;
+        for (int i = 0; i < WORKERS; i++) {
+            StubWorker stubWorker = new StubWorker();
+            if (i == 0) {
+                slowWorker = stubWorker;
+            }
+            WebServer webServer = new WebServer(FIRST_PORT + i, stubWorker);
+            webServer.startServer();
+            webServers.add(webServer);
+            workerAddresses.add(String.format("http://localhost:%d/task", FIRST_PORT + i));
+        }
+
+        System.out.println(String.format("%d workers, %d documents, deadline %d ms, workers answer in %d ms",
+                WORKERS, DOCUMENTS, DEADLINE.toMillis(), WORKER_MILLIS));
+        System.out.println(String.format("%-44s %9s %9s %9s %9s %8s %8s", "scenario",
+                "p50(ms)", "p95(ms)", "p99(ms)", "max(ms)", "partial", "hedged"));
+
+        slowWorker.slowDown(slowFraction, slowMillis);
+        String slowScenario = String.format("%.0f%% of worker 0 requests take %d ms", slowFraction * 100, slowMillis);
+        System.out.println(run(slowScenario + ", no hedging", workerAddresses, documentsDirectory, false, searches));
+        System.out.println(run(slowScenario + ", hedging", workerAddresses, documentsDirectory, true, searches));
+
+        slowWorker.slowDown(1, Integer.MAX_VALUE);
+        System.out.println(run("worker 0 never answers, no hedging", workerAddresses, documentsDirectory, false,
+                DEAD_WORKER_SEARCHES));
+        System.out.println(run("worker 0 never answers, hedging", workerAddresses, documentsDirectory, true,
+                DEAD_WORKER_SEARCHES));
+
+        for (WebServer webServer : webServers) {
+            webServer.stop();
+        }
+        // Requests to the dead worker are still asleep on its server threads
+        System.exit(0);
+    }
+
+    private static String run(String scenario, List<String> workerAddresses, Path documentsDirectory,
+                              boolean hedging, int searches) {
+        Aggregator aggregator = new Aggregator(new WebClient(), hedging);
+        SearchCoordinator searchCoordinator = new SearchCoordinator(() -> workerAddresses, aggregator,
+                documentsDirectory.toString(), 10, DEADLINE, new ShardScheduler(ShardScheduler.Mode.EVEN));
+
+        long[] latencies = new long[searches];
+        int partialSearches = 0;
+        PrintStream out = System.out;
+        // The coordinator logs every search
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            for (int i = 0; i < searches; i++) {
+                long start = System.nanoTime();
+                SearchResult searchResult = searchCoordinator.search(QUERY);
+                latencies[i] = System.nanoTime() - start;
+                if (searchResult.isPartial()) {
+                    partialSearches++;
+                }
+            }
+        } finally {
+            System.setOut(out);
+        }
+
+        Arrays.sort(latencies);
+        return String.format("%-44s %9.1f %9.1f %9.1f %9.1f %8d %8d", scenario,
+                percentile(latencies, 0.50), percentile(latencies, 0.95), percentile(latencies, 0.99),
+                latencies[latencies.length - 1] / 1_000_000.0, partialSearches, aggregator.getHedgedRequestCount());
+    }
+
+    private static double percentile(long[] sortedLatencies, double percentile) {
+        int index = (int) Math.ceil(percentile * sortedLatencies.length) - 1;
+        return sortedLatencies[Math.max(index, 0)] / 1_000_000.0;
+    }
+
+    /**
+     * Answers tasks with made-up frequencies without reading the documents
+     */
+    private static class StubWorker implements OnRequestCallback {
+        private volatile double slowFraction;
+        private volatile int slowMillis;
+
+        void slowDown(double slowFraction, int slowMillis) {
+            this.slowFraction = slowFraction;
+            this.slowMillis = slowMillis;
+        }
+
+        @Override
+        public byte[] handleRequest(byte[] requestPayload) {
+            return handleRequest(requestPayload, BinaryCodec.CONTENT_TYPE);
+        }
+
+        @Override
+        public byte[] handleRequest(byte[] requestPayload, String contentType) {
+            Task task = BinaryCodec.decodeTask(requestPayload);
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            sleep(random.nextDouble() < slowFraction ? slowMillis : WORKER_MILLIS);
+
+            Result result = new Result();
+            for (String document : task.getDocuments()) {
+                DocumentData documentData = new DocumentData();
+                for (String term : task.getSearchTerms()) {
+                    // Deterministic, so hedged and first answers agree
+                    documentData.putTermFrequency(term, Math.floorMod((document + term).hashCode(), 100) / 1000.0);
+                }
+                result.addDocumentData(document, documentData);
+            }
+            return BinaryCodec.encodeResult(result);
+        }
+
+        @Override
+        public String getEndpoint() {
+            return "/task";
+        }
+
+        private static void sleep(int millis) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
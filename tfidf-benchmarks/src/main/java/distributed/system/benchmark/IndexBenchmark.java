@@ -0,0 +1,77 @@
+package distributed.system.benchmark;
+
+import distributed.system.networking.OnRequestCallback;
+import distributed.system.tfidf.index.IndexBuilder;
+import distributed.system.tfidf.index.IndexFiles;
+import distributed.system.tfidf.index.MappedDocumentIndex;
+import distributed.system.tfidf.model.SerializationUtils;
+import distributed.system.tfidf.model.Task;
+import distributed.system.tfidf.search.SearchWorker;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reports cold start and warm query latency of the FileReader based worker against the heap and memory mapped index.
+ * Usage: IndexBenchmark [documents] [lines per document]
+ */
+public class IndexBenchmark {
+    private static final int DOCUMENTS = 50;
+    private static final int LINES_PER_DOCUMENT = 5_000;
+    private static final int WORDS_PER_LINE = 12;
+    private static final int QUERY_LENGTH = 10;
+    private static final int WARM_QUERIES = 20;
+
+    private interface WorkerFactory {
+        OnRequestCallback create() throws IOException;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int documentCount = args.length > 0 ? Integer.parseInt(args[0]) : DOCUMENTS;
+        int linesPerDocument = args.length > 1 ? Integer.parseInt(args[1]) : LINES_PER_DOCUMENT;
+
+        Path workDirectory = Files.createTempDirectory("index-benchmark");
+        Path indexDirectory = workDirectory.resolve("index");
+        SyntheticCorpus corpus = new SyntheticCorpus(7, 20_000);
+        List<String> documents = writeDocuments(corpus, workDirectory, documentCount, linesPerDocument);
+        new IndexBuilder(indexDirectory).update(documents);
+
+        byte[] request = SerializationUtils.serialize(new Task(corpus.terms(QUERY_LENGTH), documents));
+
+        List<String> report = new ArrayList<>();
+        report.add(String.format("%d documents of %d lines, %d term query", documentCount, linesPerDocument, QUERY_LENGTH));
+        report.add(String.format("%-10s %16s %16s", "path", "cold start(ms)", "warm query(ms)"));
+        report.add(measure("file", SearchWorker::new, request));
+        report.add(measure("heap", () -> new SearchWorker(IndexFiles.load(indexDirectory)), request));
+        report.add(measure("mapped", () -> new SearchWorker(MappedDocumentIndex.open(indexDirectory)), request));
+        report.forEach(System.out::println);
+    }
+
+    private static String measure(String name, WorkerFactory workerFactory, byte[] request) throws IOException {
+        long start = System.nanoTime();
+        OnRequestCallback worker = workerFactory.create();
+        worker.handleRequest(request);
+        double coldStartMillis = (System.nanoTime() - start) / 1_000_000.0;
+
+        start = System.nanoTime();
+        for (int i = 0; i < WARM_QUERIES; i++) {
+            worker.handleRequest(request);
+        }
+        double warmQueryMillis = (System.nanoTime() - start) / 1_000_000.0 / WARM_QUERIES;
+        return String.format("%-10s %16.2f %16.2f", name, coldStartMillis, warmQueryMillis);
+    }
+
+    private static List<String> writeDocuments(SyntheticCorpus corpus, Path directory,
+                                               int documentCount, int linesPerDocument) throws IOException {
+        List<String> documents = new ArrayList<>(documentCount);
+        for (int i = 0; i < documentCount; i++) {
+            Path document = directory.resolve(String.format("book-%04d.txt", i));
+            Files.write(document, corpus.lines(linesPerDocument, WORDS_PER_LINE));
+            documents.add(document.toString());
+        }
+        return documents;
+    }
+}
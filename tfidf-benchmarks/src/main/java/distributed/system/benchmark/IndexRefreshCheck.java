@@ -0,0 +1,83 @@
+package distributed.system.benchmark;
+
+import distributed.system.tfidf.index.DocumentIndex;
+import distributed.system.tfidf.index.IndexFiles;
+import distributed.system.tfidf.index.IndexRefresher;
+import distributed.system.tfidf.model.BinaryCodec;
+import distributed.system.tfidf.model.Result;
+import distributed.system.tfidf.model.Task;
+import distributed.system.tfidf.search.DocumentsDirectory;
+import distributed.system.tfidf.search.SearchWorker;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Verifies that a worker answers from a rebuilt index once a document is edited: the edit is seen straight away by
+ * reading the document from disk, and after a refresh the new generation holds the document as edited.
+ * Usage: IndexRefreshCheck
+ */
+public class IndexRefreshCheck {
+    private static final List<String> TERMS = List.of("apple");
+
+    public static void main(String[] args) throws IOException {
+        Path documentsDirectory = Files.createTempDirectory("index-refresh-documents");
+        Path indexDirectory = Files.createTempDirectory("index-refresh-index");
+        Path edited = documentsDirectory.resolve("edited.txt");
+        Files.writeString(documentsDirectory.resolve("other.txt"), "pear apple pear pear", StandardCharsets.UTF_8);
+        Files.writeString(edited, "apple pear pear pear", StandardCharsets.UTF_8);
+        String editedDocument = documentsDirectory + "/" + edited.getFileName();
+
+        int failures = 0;
+        try (IndexRefresher indexRefresher = new IndexRefresher(indexDirectory,
+                new DocumentsDirectory(documentsDirectory.toString(), Duration.ZERO))) {
+            indexRefresher.refresh();
+            Path firstGeneration = IndexFiles.currentGeneration(indexDirectory);
+            SearchWorker searchWorker = new SearchWorker(indexRefresher::getDocumentIndex, 1, null);
+            failures += check("before the edit", search(searchWorker, editedDocument), 0.25);
+
+            Files.writeString(edited, "apple apple apple pear", StandardCharsets.UTF_8);
+            // A coarse file system clock could otherwise leave the modification time unchanged
+            Files.setLastModifiedTime(edited, FileTime.fromMillis(Files.getLastModifiedTime(edited).toMillis() + 2000));
+            failures += check("after the edit, from disk", search(searchWorker, editedDocument), 0.75);
+
+            if (!indexRefresher.refresh()) {
+                System.out.println("The refresh did not swap in a new generation");
+                failures++;
+            }
+            Path secondGeneration = IndexFiles.currentGeneration(indexDirectory);
+            DocumentIndex documentIndex = indexRefresher.getDocumentIndex();
+            int documentId = documentIndex.getDocumentId(editedDocument);
+            if (secondGeneration.equals(firstGeneration)
+                    || documentIndex.getDocument(documentId).getLastModified() != edited.toFile().lastModified()) {
+                System.out.println(String.format("The worker's index is %s, still from before the edit", secondGeneration));
+                failures++;
+            }
+            failures += check("after the refresh, from " + secondGeneration.getFileName(),
+                    search(searchWorker, editedDocument), 0.75);
+        }
+
+        if (failures > 0) {
+            System.out.println(String.format("%d failures", failures));
+            System.exit(1);
+        }
+        System.out.println("The worker answers from the rebuilt index");
+    }
+
+    private static double search(SearchWorker searchWorker, String document) {
+        byte[] response = searchWorker.handleRequest(BinaryCodec.encodeTask(new Task(TERMS, List.of(document))),
+                BinaryCodec.CONTENT_TYPE);
+        Result result = BinaryCodec.decodeResult(response);
+        return result.getDocumentToDocumentData().get(document).getFrequency(TERMS.get(0));
+    }
+
+    private static int check(String stage, double frequency, double expected) {
+        System.out.println(String.format("%s: frequency %.2f, expected %.2f", stage, frequency, expected));
+        return frequency == expected ? 0 : 1;
+    }
+}
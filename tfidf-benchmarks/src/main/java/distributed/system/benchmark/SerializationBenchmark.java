@@ -0,0 +1,83 @@
+package distributed.system.benchmark;
+
+import distributed.system.tfidf.model.BinaryCodec;
+import distributed.system.tfidf.model.DocumentData;
+import distributed.system.tfidf.model.Result;
+import distributed.system.tfidf.model.SerializationUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * Compares payload size and encode/decode throughput of Java serialization and {@link BinaryCodec} for a Result.
+ * Usage: SerializationBenchmark [documents] [terms]
+ */
+public class SerializationBenchmark {
+    private static final int DOCUMENTS = 2_000;
+    private static final int TERMS = 12;
+    private static final long MEASURE_NANOS = 2_000_000_000L;
+
+    public static void main(String[] args) {
+        int documentCount = args.length > 0 ? Integer.parseInt(args[0]) : DOCUMENTS;
+        int termCount = args.length > 1 ? Integer.parseInt(args[1]) : TERMS;
+        Result result = createResult(documentCount, termCount);
+
+        byte[] serialized = SerializationUtils.serialize(result);
+        byte[] binary = BinaryCodec.encodeResult(result);
+        verifyRoundTrip(result, (Result) SerializationUtils.deserialize(serialized));
+        verifyRoundTrip(result, BinaryCodec.decodeResult(binary));
+
+        System.out.println(String.format("Result with %d documents x %d terms", documentCount, termCount));
+        System.out.println(String.format("%-8s %12s %14s %14s", "format", "bytes", "encode(ops/s)", "decode(ops/s)"));
+        System.out.println(String.format("%-8s %12d %14.1f %14.1f", "java", serialized.length,
+                throughput(result, SerializationUtils::serialize),
+                throughput(serialized, SerializationUtils::deserialize)));
+        System.out.println(String.format("%-8s %12d %14.1f %14.1f", "binary", binary.length,
+                throughput(result, BinaryCodec::encodeResult),
+                throughput(binary, BinaryCodec::decodeResult)));
+    }
+
+    static Result createResult(int documentCount, int termCount) {
+        SyntheticCorpus corpus = new SyntheticCorpus(11, 20_000);
+        List<String> terms = corpus.terms(termCount);
+        Random random = new Random(13);
+
+        Result result = new Result();
+        for (int i = 0; i < documentCount; i++) {
+            DocumentData documentData = new DocumentData();
+            for (String term : terms) {
+                documentData.putTermFrequency(term, random.nextInt(4) == 0 ? 0.0 : random.nextDouble() / 1000);
+            }
+            result.addDocumentData(String.format("./resources/books/book-%05d.txt", i), documentData);
+        }
+        return result;
+    }
+
+    private static void verifyRoundTrip(Result expected, Result actual) {
+        for (Map.Entry<String, DocumentData> documentEntry : expected.getDocumentToDocumentData().entrySet()) {
+            DocumentData actualData = actual.getDocumentToDocumentData().get(documentEntry.getKey());
+            documentEntry.getValue().forEachTermFrequency((term, frequency) -> {
+                if (actualData.getFrequency(term) != frequency) {
+                    throw new IllegalStateException("Round trip mismatch for " + documentEntry.getKey());
+                }
+            });
+        }
+    }
+
+    private static <T> double throughput(T input, Function<T, ?> operation) {
+        for (int i = 0; i < 20; i++) {
+            operation.apply(input);
+        }
+        long operations = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            operation.apply(input);
+            operations++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < MEASURE_NANOS);
+        return operations * 1_000_000_000.0 / elapsed;
+    }
+}
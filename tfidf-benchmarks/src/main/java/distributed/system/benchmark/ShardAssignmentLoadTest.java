@@ -0,0 +1,155 @@
+package distributed.system.benchmark;
+
+import distributed.system.Aggregator;
+import distributed.system.WebClient;
+import distributed.system.networking.OnRequestCallback;
+import distributed.system.networking.WebServer;
+import distributed.system.tfidf.model.BinaryCodec;
+import distributed.system.tfidf.model.DocumentData;
+import distributed.system.tfidf.model.Result;
+import distributed.system.tfidf.model.Task;
+import distributed.system.tfidf.search.SearchCoordinator;
+import distributed.system.tfidf.search.ShardScheduler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Runs searches through a SearchCoordinator against local stub workers of different speeds, over documents of
+ * very different sizes, and compares the search latency of the shard assignment modes. The stub workers take time
+ * in proportion to the bytes of the documents they are sent, without reading them.
+ * Usage: ShardAssignmentLoadTest [searches] [documents]
+ */
+public class ShardAssignmentLoadTest {
+    private static final int FIRST_PORT = 18280;
+    private static final int[] WORKER_BYTES_PER_MILLI = {10_000, 10_000, 20_000, 40_000};
+    private static final int REQUEST_MILLIS = 2;
+    private static final int SEARCHES = 50;
+    private static final int WARMUP_SEARCHES = 10;
+    private static final int DOCUMENTS = 64;
+    private static final double MEDIAN_DOCUMENT_BYTES = 100_000;
+    private static final String QUERY = "detective war winter";
+
+    public static void main(String[] args) throws IOException {
+        int searches = args.length > 0 ? Integer.parseInt(args[0]) : SEARCHES;
+        int documents = args.length > 1 ? Integer.parseInt(args[1]) : DOCUMENTS;
+
+        Path documentsDirectory = Files.createTempDirectory("assignment-documents");
+        Random random = new Random(42);
+        long totalBytes = 0;
+        for (int i = 0; i < documents; i++) {
+            // Log-normal sizes: most documents are small, a few are many times the median
+            long bytes = (long) (MEDIAN_DOCUMENT_BYTES * Math.exp(random.nextGaussian() * 1.2));
+            try (RandomAccessFile file = new RandomAccessFile(documentsDirectory.resolve(String.format("book-%03d.txt", i)).toFile(), "rw")) {
+                file.setLength(bytes);
+            }
+            totalBytes += bytes;
+        }
+
+        List<WebServer> webServers = new ArrayList<>();
+        List<String> workerAddresses = new ArrayList<>();
+        int totalBytesPerMilli = 0;
+        for (int i = 0; i < WORKER_BYTES_PER_MILLI.length; i++) {
+            WebServer webServer = new WebServer(FIRST_PORT + i, new StubWorker(WORKER_BYTES_PER_MILLI[i]));
+            webServer.startServer();
+            webServers.add(webServer);
+            workerAddresses.add(String.format("http://localhost:%d/task", FIRST_PORT + i));
+            totalBytesPerMilli += WORKER_BYTES_PER_MILLI[i];
+        }
+
+        System.out.println(String.format("%d documents, %.1f MB, workers searching %s bytes/ms, at best %.1f ms per search",
+                documents, totalBytes / 1e6, Arrays.toString(WORKER_BYTES_PER_MILLI), (double) totalBytes / totalBytesPerMilli));
+        System.out.println(String.format("%-16s %9s %9s %9s %9s", "assignment", "p50(ms)", "p95(ms)", "max(ms)", "tasks"));
+        for (ShardScheduler.Mode mode : ShardScheduler.Mode.values()) {
+            System.out.println(run(mode, workerAddresses, documentsDirectory, searches));
+        }
+
+        for (WebServer webServer : webServers) {
+            webServer.stop();
+        }
+    }
+
+    private static String run(ShardScheduler.Mode mode, List<String> workerAddresses, Path documentsDirectory, int searches) {
+        Aggregator aggregator = new Aggregator(new WebClient(), false);
+        SearchCoordinator searchCoordinator = new SearchCoordinator(() -> workerAddresses, aggregator,
+                documentsDirectory.toString(), 10, Duration.ofSeconds(30), new ShardScheduler(mode));
+
+        long[] latencies = new long[searches];
+        PrintStream out = System.out;
+        // The coordinator logs every search
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            // Gives the balanced assignment time to learn the worker speeds
+            for (int i = 0; i < WARMUP_SEARCHES; i++) {
+                searchCoordinator.search(QUERY);
+            }
+            for (int i = 0; i < searches; i++) {
+                long start = System.nanoTime();
+                searchCoordinator.search(QUERY);
+                latencies[i] = System.nanoTime() - start;
+            }
+        } finally {
+            System.setOut(out);
+        }
+
+        Arrays.sort(latencies);
+        return String.format("%-16s %9.1f %9.1f %9.1f %9.1f", mode.name().toLowerCase(),
+                percentile(latencies, 0.50), percentile(latencies, 0.95), latencies[latencies.length - 1] / 1_000_000.0,
+                aggregator.getTaskLatency().getCount() / (double) (searches + WARMUP_SEARCHES));
+    }
+
+    private static double percentile(long[] sortedLatencies, double percentile) {
+        int index = (int) Math.ceil(percentile * sortedLatencies.length) - 1;
+        return sortedLatencies[Math.max(index, 0)] / 1_000_000.0;
+    }
+
+    private static class StubWorker implements OnRequestCallback {
+        private final int bytesPerMilli;
+
+        StubWorker(int bytesPerMilli) {
+            this.bytesPerMilli = bytesPerMilli;
+        }
+
+        @Override
+        public byte[] handleRequest(byte[] requestPayload) {
+            return handleRequest(requestPayload, BinaryCodec.CONTENT_TYPE);
+        }
+
+        @Override
+        public byte[] handleRequest(byte[] requestPayload, String contentType) {
+            Task task = BinaryCodec.decodeTask(requestPayload);
+            long bytes = 0;
+            Result result = new Result();
+            for (String document : task.getDocuments()) {
+                bytes += new File(document).length();
+                DocumentData documentData = new DocumentData();
+                for (String term : task.getSearchTerms()) {
+                    documentData.putTermFrequency(term, Math.floorMod((document + term).hashCode(), 100) / 1000.0);
+                }
+                result.addDocumentData(document, documentData);
+            }
+
+            try {
+                Thread.sleep(REQUEST_MILLIS + bytes / bytesPerMilli);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return BinaryCodec.encodeResult(result);
+        }
+
+        @Override
+        public String getEndpoint() {
+            return "/task";
+        }
+    }
+}
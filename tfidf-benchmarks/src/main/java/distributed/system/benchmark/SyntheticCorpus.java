@@ -0,0 +1,75 @@
+package distributed.system.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class SyntheticCorpus {
+    private final Random random;
+    private final List<String> vocabulary;
+
+    public SyntheticCorpus(long seed, int vocabularySize) {
+        this.random = new Random(seed);
+        this.vocabulary = new ArrayList<>(vocabularySize);
+        for (int i = 0; i < vocabularySize; i++) {
+            vocabulary.add(randomWord());
+        }
+    }
+
+    public List<String> getVocabulary() {
+        return vocabulary;
+    }
+
+    public List<String> words(int count) {
+        List<String> words = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            words.add(nextWord());
+        }
+        return words;
+    }
+
+    public List<String> terms(int count) {
+        List<String> terms = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            terms.add(vocabulary.get(random.nextInt(vocabulary.size())));
+        }
+        return terms;
+    }
+
+    public String line(int wordCount) {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < wordCount; i++) {
+            if (i > 0) {
+                line.append(random.nextInt(10) == 0 ? ", " : " ");
+            }
+            line.append(nextWord());
+        }
+        return line.append('.').toString();
+    }
+
+    public List<String> lines(int lineCount, int wordsPerLine) {
+        List<String> lines = new ArrayList<>(lineCount);
+        for (int i = 0; i < lineCount; i++) {
+            lines.add(line(wordsPerLine));
+        }
+        return lines;
+    }
+
+    private String nextWord() {
+        // Skew towards the head of the vocabulary so term counts look like natural text
+        double skewed = Math.pow(random.nextDouble(), 3);
+        return vocabulary.get((int) (skewed * vocabulary.size()));
+    }
+
+    private String randomWord() {
+        int length = 3 + random.nextInt(8);
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) ('a' + random.nextInt(26));
+        }
+        if (random.nextInt(5) == 0) {
+            chars[0] = Character.toUpperCase(chars[0]);
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,123 @@
+package distributed.system.benchmark;
+
+import distributed.system.tfidf.search.Tokenizer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+/**
+ * Verifies that {@link Tokenizer} splits exactly like the regex that TFIDF.getWordsFromLine used to run.
+ * <p>
+ * The golden file holds records of an input line, the number of tokens the regex produced, and one token per line.
+ * Usage: TokenizerGoldenCheck [--write inputLines goldenFile] [goldenFile]
+ */
+public class TokenizerGoldenCheck {
+    private static final Pattern LEGACY_PATTERN = Pattern.compile("(\\.)+|(,)+|( )+|(-)+|(\\?)+|(!)+|(;)+|(:)+|(/d)+|(/n)+");
+    private static final String GOLDEN_RESOURCE = "/tokenizer-golden.txt";
+    private static final String FUZZ_ALPHABET = "aB.,- ?!;:/dnDÉΣ";
+    private static final int FUZZ_LINES = 200_000;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 3 && args[0].equals("--write")) {
+            writeGoldenFile(Files.readAllLines(Paths.get(args[1]), StandardCharsets.UTF_8), args[2]);
+            return;
+        }
+
+        int failures;
+        try (InputStream golden = args.length == 1 ? Files.newInputStream(Paths.get(args[0]))
+                : TokenizerGoldenCheck.class.getResourceAsStream(GOLDEN_RESOURCE)) {
+            failures = checkGoldenFile(golden);
+        }
+        failures += fuzz(new Random(17));
+
+        if (failures > 0) {
+            System.out.println(String.format("%d mismatches", failures));
+            System.exit(1);
+        }
+        System.out.println("Tokenizer matches the regex splitter");
+    }
+
+    private static void writeGoldenFile(List<String> lines, String goldenFile) throws IOException {
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(Paths.get(goldenFile), StandardCharsets.UTF_8))) {
+            for (String line : lines) {
+                String[] tokens = LEGACY_PATTERN.split(line);
+                writer.println(line);
+                writer.println(tokens.length);
+                for (String token : tokens) {
+                    writer.println(token);
+                }
+            }
+        }
+    }
+
+    private static int checkGoldenFile(InputStream golden) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(golden, StandardCharsets.UTF_8));
+        int records = 0;
+        int failures = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            int tokenCount = Integer.parseInt(reader.readLine());
+            List<String> expected = new ArrayList<>(tokenCount);
+            for (int i = 0; i < tokenCount; i++) {
+                expected.add(reader.readLine());
+            }
+            records++;
+            if (!matches(line, expected)) {
+                failures++;
+            }
+        }
+        System.out.println(String.format("Checked %d golden records", records));
+        return failures;
+    }
+
+    private static int fuzz(Random random) {
+        int failures = 0;
+        char[] chars = new char[24];
+        for (int i = 0; i < FUZZ_LINES; i++) {
+            int length = random.nextInt(chars.length);
+            for (int j = 0; j < length; j++) {
+                chars[j] = FUZZ_ALPHABET.charAt(random.nextInt(FUZZ_ALPHABET.length()));
+            }
+            String line = new String(chars, 0, length);
+            if (!matches(line, Arrays.asList(LEGACY_PATTERN.split(line)))) {
+                failures++;
+            }
+        }
+        System.out.println(String.format("Checked %d random lines", FUZZ_LINES));
+        return failures;
+    }
+
+    private static boolean matches(String line, List<String> expected) {
+        List<String> actual = Tokenizer.split(line);
+        List<String> lowerCased = new ArrayList<>();
+        new Tokenizer().tokenize(line, (token, length) -> lowerCased.add(new String(token, 0, length)));
+
+        List<String> expectedLowerCased = new ArrayList<>();
+        for (String token : expected) {
+            expectedLowerCased.add(lowerCase(token));
+        }
+
+        if (actual.equals(expected) && lowerCased.equals(expectedLowerCased)) {
+            return true;
+        }
+        System.out.println(String.format("Mismatch for \"%s\": expected %s, split %s, tokenized %s", line, expected, actual, lowerCased));
+        return false;
+    }
+
+    private static String lowerCase(String token) {
+        StringBuilder lowerCased = new StringBuilder(token.length());
+        token.codePoints().map(Character::toLowerCase).forEach(lowerCased::appendCodePoint);
+        return lowerCased.toString();
+    }
+}
@@ -0,0 +1,114 @@
+package distributed.system.benchmark;
+
+import distributed.system.networking.ExecutorConfig;
+import distributed.system.networking.OnRequestCallback;
+import distributed.system.networking.WebServer;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bursts requests at a WebServer whose handler blocks like a worker reading books from disk,
+ * and compares the latency percentiles of the executor modes.
+ * Usage: WebServerLoadTest [requests] [concurrency] [handler millis]
+ */
+public class WebServerLoadTest {
+    private static final int FIRST_PORT = 18080;
+    private static final int REQUESTS = 2_000;
+    private static final int CONCURRENCY = 64;
+    private static final int HANDLER_MILLIS = 20;
+
+    public static void main(String[] args) throws InterruptedException {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : REQUESTS;
+        int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : CONCURRENCY;
+        int handlerMillis = args.length > 2 ? Integer.parseInt(args[2]) : HANDLER_MILLIS;
+
+        List<ExecutorConfig> executorConfigs = List.of(
+                ExecutorConfig.fixed(ExecutorConfig.DEFAULT_THREADS),
+                ExecutorConfig.fixed(32),
+                ExecutorConfig.bounded(ExecutorConfig.DEFAULT_THREADS, 16),
+                ExecutorConfig.virtualThreads());
+
+        System.out.println(String.format("%d requests, %d concurrent, handler blocks %d ms", requests, concurrency, handlerMillis));
+        System.out.println(String.format("%-32s %10s %10s %10s %8s %10s", "executor", "p50(ms)", "p99(ms)", "max(ms)", "503s", "req/s"));
+        int port = FIRST_PORT;
+        for (ExecutorConfig executorConfig : executorConfigs) {
+            System.out.println(run(executorConfig, port++, requests, concurrency, handlerMillis));
+        }
+    }
+
+    private static String run(ExecutorConfig executorConfig, int port, int requests, int concurrency, int handlerMillis)
+            throws InterruptedException {
+        WebServer webServer = new WebServer(port, new BlockingCallback(handlerMillis), executorConfig);
+        webServer.startServer();
+
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(String.format("http://localhost:%d/task", port)))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(new byte[]{1}))
+                .build();
+
+        long[] latencies = new long[requests];
+        AtomicInteger rejected = new AtomicInteger();
+        Semaphore inFlight = new Semaphore(concurrency);
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[requests];
+
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            inFlight.acquire();
+            int requestNumber = i;
+            long sent = System.nanoTime();
+            futures[i] = client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, error) -> {
+                        latencies[requestNumber] = System.nanoTime() - sent;
+                        if (error != null || response.statusCode() == 503) {
+                            rejected.incrementAndGet();
+                        }
+                        inFlight.release();
+                    });
+        }
+        CompletableFuture.allOf(futures).exceptionally(error -> null).join();
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        webServer.stop();
+
+        Arrays.sort(latencies);
+        return String.format("%-32s %10.1f %10.1f %10.1f %8d %10.1f", executorConfig,
+                percentile(latencies, 0.50), percentile(latencies, 0.99), latencies[latencies.length - 1] / 1_000_000.0,
+                rejected.get(), requests / seconds);
+    }
+
+    private static double percentile(long[] sortedLatencies, double percentile) {
+        int index = (int) Math.ceil(percentile * sortedLatencies.length) - 1;
+        return sortedLatencies[Math.max(index, 0)] / 1_000_000.0;
+    }
+
+    private static class BlockingCallback implements OnRequestCallback {
+        private final int handlerMillis;
+
+        BlockingCallback(int handlerMillis) {
+            this.handlerMillis = handlerMillis;
+        }
+
+        @Override
+        public byte[] handleRequest(byte[] requestPayload) {
+            try {
+                Thread.sleep(handlerMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return requestPayload;
+        }
+
+        @Override
+        public String getEndpoint() {
+            return "/task";
+        }
+    }
+}
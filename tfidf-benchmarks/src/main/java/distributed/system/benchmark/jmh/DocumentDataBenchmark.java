@@ -0,0 +1,62 @@
+package distributed.system.benchmark.jmh;
+
+import distributed.system.benchmark.SyntheticCorpus;
+import distributed.system.tfidf.model.DocumentData;
+import distributed.system.tfidf.search.TFIDF;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts the query terms in one pass over the document, as {@link TFIDF#createDocumentData(List, List)} does, against
+ * scanning the document once per term, as it did before
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DocumentDataBenchmark {
+    @Param({"10000", "100000"})
+    public int documentWords;
+
+    @Param({"1", "5", "15", "25"})
+    public int queryLength;
+
+    private List<String> words;
+    private List<String> terms;
+
+    @Setup
+    public void setUp() {
+        SyntheticCorpus corpus = new SyntheticCorpus(2, 20_000);
+        words = corpus.words(documentWords);
+        terms = corpus.terms(queryLength);
+        DocumentData counted = TFIDF.createDocumentData(words, terms);
+        DocumentData scanned = createDocumentDataByScanning(words, terms);
+        for (String term : terms) {
+            if (counted.getFrequency(term) != scanned.getFrequency(term)) {
+                throw new IllegalStateException("Frequency mismatch for term " + term);
+            }
+        }
+    }
+
+    @Benchmark
+    public DocumentData createDocumentData() {
+        return TFIDF.createDocumentData(words, terms);
+    }
+
+    @Benchmark
+    public DocumentData createDocumentDataByScanning() {
+        return createDocumentDataByScanning(words, terms);
+    }
+
+    private static DocumentData createDocumentDataByScanning(List<String> words, List<String> terms) {
+        DocumentData documentData = new DocumentData();
+        for (String term : terms) {
+            documentData.putTermFrequency(term, TFIDF.calculateTermFrequency(words, term));
+        }
+        return documentData;
+    }
+}
@@ -0,0 +1,68 @@
+package distributed.system.benchmark.jmh;
+
+import distributed.system.benchmark.SyntheticCorpus;
+import distributed.system.tfidf.model.DocumentData;
+import distributed.system.tfidf.model.DocumentScore;
+import distributed.system.tfidf.search.DocumentFrequencyCache;
+import distributed.system.tfidf.search.TFIDF;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScoringBenchmark {
+    private static final long CORPUS_VERSION = 1;
+
+    @Param({"1000", "10000"})
+    public int documents;
+
+    @Param({"5", "15"})
+    public int queryLength;
+
+    @Param({"10"})
+    public int limit;
+
+    private List<String> terms;
+    private Map<String, DocumentData> documentResults;
+    private DocumentFrequencyCache documentFrequencyCache;
+
+    @Setup
+    public void setUp() {
+        terms = new SyntheticCorpus(3, 20_000).terms(queryLength);
+        documentResults = new HashMap<>();
+        Random random = new Random(4);
+        for (int i = 0; i < documents; i++) {
+            DocumentData documentData = new DocumentData();
+            for (String term : terms) {
+                documentData.putTermFrequency(term, random.nextInt(3) == 0 ? 0.0 : random.nextDouble() / 1000);
+            }
+            documentResults.put(String.format("./resources/books/book-%05d.txt", i), documentData);
+        }
+        documentFrequencyCache = new DocumentFrequencyCache();
+    }
+
+    @Benchmark
+    public Map<Double, List<String>> getDocumentsScores() {
+        return TFIDF.getDocumentsScores(terms, documentResults);
+    }
+
+    @Benchmark
+    public List<DocumentScore> getTopDocuments() {
+        return TFIDF.getTopDocuments(terms, documentResults, limit);
+    }
+
+    @Benchmark
+    public List<DocumentScore> getTopDocumentsWithCachedDocumentFrequencies() {
+        return TFIDF.getTopDocuments(terms, documentResults, limit, Double.NEGATIVE_INFINITY,
+                documentFrequencyCache, CORPUS_VERSION);
+    }
+}
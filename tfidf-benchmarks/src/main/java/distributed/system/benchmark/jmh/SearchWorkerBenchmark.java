@@ -0,0 +1,88 @@
+package distributed.system.benchmark.jmh;
+
+import distributed.system.benchmark.SyntheticCorpus;
+import distributed.system.tfidf.index.IndexBuilder;
+import distributed.system.tfidf.index.IndexFiles;
+import distributed.system.tfidf.index.MappedDocumentIndex;
+import distributed.system.tfidf.model.SerializationUtils;
+import distributed.system.tfidf.model.Task;
+import distributed.system.tfidf.search.SearchWorker;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * End to end cost of a /task request on a corpus written to a temporary directory
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchWorkerBenchmark {
+    private static final int WORDS_PER_LINE = 12;
+
+    @Param({"20"})
+    public int documents;
+
+    @Param({"2000"})
+    public int linesPerDocument;
+
+    @Param({"5", "15"})
+    public int queryLength;
+
+    @Param({"file", "heap", "mapped"})
+    public String source;
+
+    private Path corpusDirectory;
+    private SearchWorker searchWorker;
+    private byte[] request;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        SyntheticCorpus corpus = new SyntheticCorpus(8, 20_000);
+        corpusDirectory = Files.createTempDirectory("search-worker-benchmark");
+        List<String> documentPaths = new ArrayList<>(documents);
+        for (int i = 0; i < documents; i++) {
+            Path document = corpusDirectory.resolve(String.format("book-%04d.txt", i));
+            Files.write(document, corpus.lines(linesPerDocument, WORDS_PER_LINE));
+            documentPaths.add(document.toString());
+        }
+        Path indexDirectory = corpusDirectory.resolve("index");
+        new IndexBuilder(indexDirectory).update(documentPaths);
+
+        switch (source) {
+            case "heap":
+                searchWorker = new SearchWorker(IndexFiles.load(indexDirectory));
+                break;
+            case "mapped":
+                searchWorker = new SearchWorker(MappedDocumentIndex.open(indexDirectory));
+                break;
+            default:
+                searchWorker = new SearchWorker();
+        }
+        request = SerializationUtils.serialize(new Task(corpus.terms(queryLength), documentPaths));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(corpusDirectory)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public byte[] handleRequest() {
+        return searchWorker.handleRequest(request);
+    }
+}
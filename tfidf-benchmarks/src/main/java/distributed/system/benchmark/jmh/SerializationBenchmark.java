@@ -0,0 +1,52 @@
+package distributed.system.benchmark.jmh;
+
+import distributed.system.benchmark.SyntheticCorpus;
+import distributed.system.tfidf.model.BinaryCodec;
+import distributed.system.tfidf.model.DocumentData;
+import distributed.system.tfidf.model.Result;
+import distributed.system.tfidf.model.SerializationUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+    @Param({"100", "2000"})
+    public int documents;
+
+    @Param({"12"})
+    public int queryLength;
+
+    private Result result;
+
+    @Setup
+    public void setUp() {
+        List<String> terms = new SyntheticCorpus(5, 20_000).terms(queryLength);
+        Random random = new Random(6);
+        result = new Result();
+        for (int i = 0; i < documents; i++) {
+            DocumentData documentData = new DocumentData();
+            for (String term : terms) {
+                documentData.putTermFrequency(term, random.nextInt(4) == 0 ? 0.0 : random.nextDouble() / 1000);
+            }
+            result.addDocumentData(String.format("./resources/books/book-%05d.txt", i), documentData);
+        }
+    }
+
+    @Benchmark
+    public Object javaSerializationRoundTrip() {
+        return SerializationUtils.deserialize(SerializationUtils.serialize(result));
+    }
+
+    @Benchmark
+    public Object binaryCodecRoundTrip() {
+        return BinaryCodec.decodeResult(BinaryCodec.encodeResult(result));
+    }
+}
@@ -0,0 +1,51 @@
+package distributed.system.benchmark.jmh;
+
+import distributed.system.benchmark.SyntheticCorpus;
+import distributed.system.tfidf.search.TFIDF;
+import distributed.system.tfidf.search.TermCounter;
+import distributed.system.tfidf.search.Tokenizer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenizerBenchmark {
+    private static final int LINES = 1_000;
+
+    @Param({"10", "40"})
+    public int wordsPerLine;
+
+    private List<String> lines;
+    private Tokenizer tokenizer;
+    private TermCounter termCounter;
+
+    @Setup
+    public void setUp() {
+        SyntheticCorpus corpus = new SyntheticCorpus(1, 20_000);
+        lines = corpus.lines(LINES, wordsPerLine);
+        tokenizer = new Tokenizer();
+        termCounter = new TermCounter(corpus.terms(10));
+    }
+
+    @Benchmark
+    public void getWordsFromLine(Blackhole blackhole) {
+        for (String line : lines) {
+            blackhole.consume(TFIDF.getWordsFromLine(line));
+        }
+    }
+
+    @Benchmark
+    public long tokenizeAndCount() {
+        for (String line : lines) {
+            tokenizer.tokenize(line, termCounter);
+        }
+        return termCounter.getTotalTokens();
+    }
+}
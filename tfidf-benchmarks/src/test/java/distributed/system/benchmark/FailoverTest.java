@@ -0,0 +1,159 @@
+package distributed.system.benchmark;
+
+import distributed.system.networking.ExecutorConfig;
+import distributed.system.tfidf.search.SearchCoordinator;
+import distributed.system.tfidf.search.SearchWorker;
+import distributed.system.zookeeper.OnElectionAction;
+import distributed.system.zookeeper.cluster.management.AsyncZooKeeper;
+import distributed.system.zookeeper.cluster.management.LeaderElection;
+import distributed.system.zookeeper.cluster.management.ServiceRegistry;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.server.ServerCnxnFactory;
+import org.apache.zookeeper.server.ZooKeeperServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts an in-process ZooKeeper server and a few nodes running the election, stops the leader, and measures how
+ * long the cluster goes without a leader: until the next node's watch fires, until it is elected, and until it
+ * serves searches. The leader either crashes, so its session has to time out, or resigns. The detect column is how
+ * long after the leader's last heartbeat the watch fired, as the next node measures it without knowing when the
+ * leader stopped.
+ * Usage: FailoverTest [session timeout millis] [rounds]
+ */
+public class FailoverTest {
+    private static final int ZOOKEEPER_PORT = 21812;
+    // The server only accepts session timeouts from 2 to 20 ticks, and expires sessions on tick boundaries
+    private static final int TICK_MILLIS = 100;
+    private static final int SESSION_TIMEOUT = 3000;
+    private static final int ROUNDS = 5;
+    private static final int NODES = 3;
+    private static final int FIRST_PORT = 18380;
+    private static final long TAKEOVER_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    public static void main(String[] args) throws IOException, InterruptedException, KeeperException {
+        int sessionTimeout = args.length > 0 ? Integer.parseInt(args[0]) : SESSION_TIMEOUT;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : ROUNDS;
+
+        File dataDirectory = Files.createTempDirectory("failover-zookeeper").toFile();
+        Path documentsDirectory = Files.createTempDirectory("failover-documents");
+        ZooKeeperServer server = new ZooKeeperServer(dataDirectory, dataDirectory, TICK_MILLIS);
+        ServerCnxnFactory connectionFactory = ServerCnxnFactory.createFactory(ZOOKEEPER_PORT, 100);
+        connectionFactory.startup(server);
+        ZooKeeper adminZooKeeper = connect(sessionTimeout);
+        AsyncZooKeeper.await(new AsyncZooKeeper(adminZooKeeper).createIfMissing("/election", CreateMode.PERSISTENT));
+
+        PrintStream out = System.out;
+        out.println(String.format("%d nodes, session timeout %d ms, %d rounds", NODES, sessionTimeout, rounds));
+        out.println(String.format("%-8s %14s %14s %14s %14s %14s", "leader", "watch(ms)", "elected(ms)",
+                "serving(ms)", "leaderless(ms)", "detect(ms)"));
+        // Every election step and registration is logged
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            for (boolean resign : new boolean[]{false, true}) {
+                long[][] steps = new long[5][rounds];
+                for (int round = 0; round < rounds; round++) {
+                    long[] roundSteps = runRound(sessionTimeout, documentsDirectory, resign);
+                    for (int step = 0; step < steps.length; step++) {
+                        steps[step][round] = roundSteps[step];
+                    }
+                }
+                out.println(row(resign ? "resigns" : "crashes", steps));
+            }
+        } finally {
+            System.setOut(out);
+            adminZooKeeper.close();
+            connectionFactory.shutdown();
+            server.shutdown();
+        }
+    }
+
+    /**
+     * @return the nanoseconds from the leader stopping to the next node's watch firing, to it being elected, to it
+     * serving, in total, and from the leader's last heartbeat to the watch firing
+     */
+    private static long[] runRound(int sessionTimeout, Path documentsDirectory, boolean resign)
+            throws IOException, InterruptedException, KeeperException {
+        List<ZooKeeper> zooKeepers = new ArrayList<>();
+        List<LeaderElection> leaderElections = new ArrayList<>();
+        List<OnElectionAction> onElectionActions = new ArrayList<>();
+        try {
+            for (int i = 0; i < NODES; i++) {
+                ZooKeeper zooKeeper = connect(sessionTimeout);
+                zooKeepers.add(zooKeeper);
+                ServiceRegistry workersServiceRegistry = new ServiceRegistry(zooKeeper, ServiceRegistry.WORKERS_REGISTRY_ZNODE);
+                ServiceRegistry coordinatorsServiceRegistry = new ServiceRegistry(zooKeeper,
+                        ServiceRegistry.COORDINATORS_REGISTRY_ZNODE);
+                OnElectionAction onElectionAction = new OnElectionAction(workersServiceRegistry,
+                        coordinatorsServiceRegistry, FIRST_PORT + i, SearchWorker::new,
+                        () -> new SearchCoordinator(workersServiceRegistry, documentsDirectory.toString()),
+                        ExecutorConfig.fixed(2));
+                onElectionActions.add(onElectionAction);
+                LeaderElection leaderElection = new LeaderElection(zooKeeper, onElectionAction);
+                leaderElections.add(leaderElection);
+                leaderElection.volunteerForLeadership();
+                leaderElection.reelectLeader();
+            }
+
+            // Lets the leader send a few heartbeats, the next node measures from the last one
+            Thread.sleep(3 * LeaderElection.DEFAULT_HEARTBEAT_INTERVAL.toMillis());
+            long stopped = System.nanoTime();
+            if (resign) {
+                leaderElections.get(0).resign();
+            } else {
+                // Stops talking to the server without closing the session, like a crashed process
+                zooKeepers.get(0).getTestable().injectSessionExpiration();
+            }
+            LeaderElection successor = leaderElections.get(1);
+            while (successor.getServingNanos() == 0) {
+                if (System.nanoTime() - stopped > TAKEOVER_TIMEOUT_NANOS) {
+                    throw new IllegalStateException("No node took over within 30 seconds");
+                }
+                Thread.sleep(1);
+            }
+            return new long[]{successor.getWatchFiredNanos() - stopped,
+                    successor.getElectedNanos() - successor.getWatchFiredNanos(),
+                    successor.getServingNanos() - successor.getElectedNanos(),
+                    successor.getServingNanos() - stopped,
+                    TimeUnit.MILLISECONDS.toNanos(successor.getDetectMillis())};
+        } finally {
+            for (int i = 0; i < onElectionActions.size(); i++) {
+                onElectionActions.get(i).stop();
+                zooKeepers.get(i).close();
+            }
+        }
+    }
+
+    private static ZooKeeper connect(int sessionTimeout) throws IOException, InterruptedException {
+        CountDownLatch connected = new CountDownLatch(1);
+        ZooKeeper zooKeeper = new ZooKeeper("localhost:" + ZOOKEEPER_PORT, sessionTimeout, event -> {
+            if (event.getState() == Watcher.Event.KeeperState.SyncConnected) {
+                connected.countDown();
+            }
+        });
+        connected.await();
+        return zooKeeper;
+    }
+
+    private static String row(String scenario, long[][] steps) {
+        StringBuilder row = new StringBuilder(String.format("%-8s", scenario));
+        for (long[] step : steps) {
+            Arrays.sort(step);
+            row.append(String.format(" %6.1f/%7.1f", step[step.length / 2] / 1e6, step[step.length - 1] / 1e6));
+        }
+        return row.append("  (p50/max)").toString();
+    }
+}
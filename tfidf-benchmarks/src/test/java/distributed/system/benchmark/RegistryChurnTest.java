@@ -0,0 +1,213 @@
+package distributed.system.benchmark;
+
+import distributed.system.zookeeper.cluster.management.ServiceRegistry;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+import org.apache.zookeeper.server.ServerCnxnFactory;
+import org.apache.zookeeper.server.ZooKeeperServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts an in-process ZooKeeper server, registers many nodes in a {@link ServiceRegistry} and keeps replacing some
+ * of them, and measures how long another registry watching them takes to see every change, and how many reads it
+ * sends to ZooKeeper for it. The last rounds replace nodes while the others keep rewriting their metadata, like
+ * workers publishing their load, so reads of changed metadata overlap the reads of the nodes that join.
+ * Usage: RegistryChurnTest [nodes] [rounds] [nodes replaced per round]
+ */
+public class RegistryChurnTest {
+    private static final int ZOOKEEPER_PORT = 21810;
+    private static final int TICK_MILLIS = 2000;
+    private static final int SESSION_TIMEOUT = 10000;
+    private static final String REGISTRY_ZNODE = "/churn_service_registry";
+    private static final int NODES = 300;
+    private static final int ROUNDS = 50;
+    private static final int REPLACED_PER_ROUND = 10;
+    private static final int METADATA_WRITES_IN_FLIGHT = 32;
+    private static final long CONVERGENCE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    public static void main(String[] args) throws IOException, InterruptedException, KeeperException {
+        int nodes = args.length > 0 ? Integer.parseInt(args[0]) : NODES;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : ROUNDS;
+        int replacedPerRound = args.length > 2 ? Integer.parseInt(args[2]) : REPLACED_PER_ROUND;
+
+        File dataDirectory = Files.createTempDirectory("registry-churn-zookeeper").toFile();
+        ZooKeeperServer server = new ZooKeeperServer(dataDirectory, dataDirectory, TICK_MILLIS);
+        ServerCnxnFactory connectionFactory = ServerCnxnFactory.createFactory(ZOOKEEPER_PORT, 100);
+        connectionFactory.startup(server);
+        ZooKeeper membersZooKeeper = connect();
+        ZooKeeper observerZooKeeper = connect();
+
+        PrintStream out = System.out;
+        // Every registration and every new list of addresses is logged
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            ServiceRegistry observer = new ServiceRegistry(observerZooKeeper, REGISTRY_ZNODE);
+            observer.registerForUpdates();
+
+            List<ServiceRegistry> members = new ArrayList<>();
+            Set<String> expectedAddresses = new HashSet<>();
+            long start = System.nanoTime();
+            for (int i = 0; i < nodes; i++) {
+                members.add(register(membersZooKeeper, i, expectedAddresses));
+            }
+            long registeredNanos = System.nanoTime() - start;
+            long convergenceNanos = awaitAddresses(observer, expectedAddresses);
+            out.println(String.format("%d nodes registered in %.1f ms, seen by the registry %.2f ms after the last one, "
+                            + "%d children reads, %d data reads", nodes, registeredNanos / 1e6, convergenceNanos / 1e6,
+                    observer.getChildrenReadCount(), observer.getDataReadCount()));
+
+            Random random = new Random(7);
+            long[] convergence = new long[rounds];
+            long childrenReads = observer.getChildrenReadCount();
+            long dataReads = observer.getDataReadCount();
+            int nextNode = nodes;
+            for (int round = 0; round < rounds; round++) {
+                for (int i = 0; i < replacedPerRound; i++) {
+                    ServiceRegistry member = members.remove(random.nextInt(members.size()));
+                    member.unregisterFromCluster();
+                    expectedAddresses.remove(member.toString());
+                    members.add(register(membersZooKeeper, nextNode++, expectedAddresses));
+                }
+                convergence[round] = awaitAddresses(observer, expectedAddresses);
+            }
+            Arrays.sort(convergence);
+            out.println(String.format("%d rounds replacing %d of %d nodes: registry up to date %.2f ms (p50) %.2f ms (max) "
+                            + "after the last change, %.1f children reads and %.1f data reads per round", rounds,
+                    replacedPerRound, nodes, convergence[rounds / 2] / 1e6, convergence[rounds - 1] / 1e6,
+                    (observer.getChildrenReadCount() - childrenReads) / (double) rounds,
+                    (observer.getDataReadCount() - dataReads) / (double) rounds));
+
+            Thread metadataWriter = new Thread(() -> rewriteMetadata(membersZooKeeper), "metadata-writer");
+            metadataWriter.setDaemon(true);
+            metadataWriter.start();
+            for (int round = 0; round < rounds; round++) {
+                for (int i = 0; i < replacedPerRound; i++) {
+                    ServiceRegistry member = members.remove(random.nextInt(members.size()));
+                    member.unregisterFromCluster();
+                    expectedAddresses.remove(member.toString());
+                    members.add(register(membersZooKeeper, nextNode++, expectedAddresses));
+                }
+                convergence[round] = awaitAddresses(observer, expectedAddresses);
+            }
+            metadataWriter.interrupt();
+            metadataWriter.join();
+            Arrays.sort(convergence);
+            out.println(String.format("%d rounds replacing %d of %d nodes while metadata is rewritten: registry up to "
+                            + "date %.2f ms (p50) %.2f ms (max) after the last change", rounds, replacedPerRound, nodes,
+                    convergence[rounds / 2] / 1e6, convergence[rounds - 1] / 1e6));
+
+            out.println(String.format("For comparison, one full synchronous reload of %d nodes takes %.1f ms",
+                    nodes, fullReloadNanos(observerZooKeeper) / 1e6));
+        } finally {
+            observerZooKeeper.close();
+            membersZooKeeper.close();
+            System.setOut(out);
+            connectionFactory.shutdown();
+            server.shutdown();
+        }
+    }
+
+    private static ZooKeeper connect() throws IOException, InterruptedException {
+        CountDownLatch connected = new CountDownLatch(1);
+        ZooKeeper zooKeeper = new ZooKeeper("localhost:" + ZOOKEEPER_PORT, SESSION_TIMEOUT, event -> {
+            if (event.getState() == org.apache.zookeeper.Watcher.Event.KeeperState.SyncConnected) {
+                connected.countDown();
+            }
+        });
+        connected.await();
+        return zooKeeper;
+    }
+
+    private static ServiceRegistry register(ZooKeeper zooKeeper, int node, Set<String> expectedAddresses)
+            throws KeeperException, InterruptedException {
+        String address = String.format("http://worker-%d:8080/task", node);
+        ServiceRegistry member = new ServiceRegistry(zooKeeper, REGISTRY_ZNODE) {
+            @Override
+            public String toString() {
+                return address;
+            }
+        };
+        member.registerToCluster(address);
+        expectedAddresses.add(address);
+        return member;
+    }
+
+    /**
+     * Keeps rewriting the data of random nodes with what they hold, {@value #METADATA_WRITES_IN_FLIGHT} writes at a
+     * time, until interrupted
+     */
+    private static void rewriteMetadata(ZooKeeper zooKeeper) {
+        Random random = new Random(11);
+        Semaphore writesInFlight = new Semaphore(METADATA_WRITES_IN_FLIGHT);
+        Map<String, byte[]> childToData = new HashMap<>();
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                List<String> children = zooKeeper.getChildren(REGISTRY_ZNODE, false);
+                childToData.keySet().retainAll(children);
+                for (String child : children) {
+                    if (!childToData.containsKey(child)) {
+                        childToData.put(child, zooKeeper.getData(REGISTRY_ZNODE + "/" + child, false, null));
+                    }
+                }
+                for (int i = 0; i < METADATA_WRITES_IN_FLIGHT; i++) {
+                    String child = children.get(random.nextInt(children.size()));
+                    writesInFlight.acquire();
+                    // A node replaced meanwhile is answered with no node, which is fine
+                    zooKeeper.setData(REGISTRY_ZNODE + "/" + child, childToData.get(child), -1,
+                            (resultCode, resultPath, context, stat) -> writesInFlight.release(), null);
+                }
+            }
+        } catch (KeeperException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            // Done
+        }
+    }
+
+    /**
+     * @return how long after the call the registry had exactly the expected addresses
+     */
+    private static long awaitAddresses(ServiceRegistry registry, Set<String> expectedAddresses)
+            throws KeeperException, InterruptedException {
+        long start = System.nanoTime();
+        while (!new HashSet<>(registry.getAllServiceAddresses()).equals(expectedAddresses)) {
+            if (System.nanoTime() - start > CONVERGENCE_TIMEOUT_NANOS) {
+                throw new IllegalStateException("The registry did not converge within 10 seconds");
+            }
+            Thread.onSpinWait();
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * What the registry used to do on every change: list the children, then check and read every one of them
+     */
+    private static long fullReloadNanos(ZooKeeper zooKeeper) throws KeeperException, InterruptedException {
+        long start = System.nanoTime();
+        for (String child : zooKeeper.getChildren(REGISTRY_ZNODE, false)) {
+            String path = REGISTRY_ZNODE + "/" + child;
+            Stat stat = zooKeeper.exists(path, false);
+            if (stat != null) {
+                zooKeeper.getData(path, false, stat);
+            }
+        }
+        return System.nanoTime() - start;
+    }
+}